@@ -0,0 +1,284 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Animator - Moves shapes smoothly over a period of time.
+ *
+ * A move (a tween) goes from one position to another in a duration. On
+ * every frame the position is worked out from the time elapsed and an
+ * easing curve, so a move lasts the same whatever its length in pixels
+ * and however fast the machine is. All the moves added before play() run
+ * in the same frame loop: each frame moves every shape inside one canvas
+ * batch, so the canvas is painted once per frame however many shapes move.
+ *
+ * Only moves someone can watch are played frame by frame. The moves of
+ * targets that are not visible end at once without asking for the canvas,
+ * so moving hidden shapes never opens its window. When the canvas is not
+ * in presentation mode (for example the headless canvas of the tests)
+ * every move ends at once, in a single batch and without sleeping.
+ *
+ * An Animator can be used from several threads: its methods are
+ * synchronized on it, so play() runs the moves of one thread at a time
+ * and the others wait for it. The shared animator of the shapes is
+ * created once, and slowMove adds and plays its move while holding it.
+ *
+ * The speed is a fast-forward factor: 2 plays twice as fast and
+ * Double.POSITIVE_INFINITY jumps to the end in a single frame. It comes
+ * from the system property canvas.animation.speed or from setSpeed.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class Animator {
+    /**
+     * System property with the fast-forward factor of the animations
+     */
+    public static final String SPEED_PROPERTY = "canvas.animation.speed";
+
+    //Speed of the slow moves of the shapes
+    public static final int PIXELS_PER_SECOND = 300;
+    private static final long MIN_DURATION = 100;
+
+    private static Animator shared;
+
+    /**
+     * Something that can be moved to a position, like the shapes
+     */
+    public interface Movable {
+        void setPosition(int x, int y);
+
+        /**
+         * Checks if the target is drawn, the moves of hidden targets end at once
+         */
+        default boolean isVisible() {
+            return true;
+        }
+    }
+
+    /**
+     * How the progress of a move is spread over its duration
+     */
+    public enum Easing {
+        LINEAR, EASE_IN, EASE_OUT, EASE_IN_OUT;
+
+        /**
+         * Returns the part of the distance covered at a part of the time
+         * @param t The part of the time elapsed, from 0 to 1
+         */
+        public double apply(double t) {
+            switch (this) {
+                case EASE_IN:
+                    return t * t * t;
+                case EASE_OUT:
+                    return 1 - (1 - t) * (1 - t) * (1 - t);
+                case EASE_IN_OUT:
+                    return t < 0.5 ? 4 * t * t * t : 1 - 4 * (1 - t) * (1 - t) * (1 - t);
+                default:
+                    return t;
+            }
+        }
+    }
+
+    private LinkedHashMap<Movable, Tween> tweens;
+    private double speed;
+    private long frames;
+
+    /**
+     * Constructor
+     */
+    public Animator() {
+        this.tweens = new LinkedHashMap<Movable, Tween>();
+        this.speed = 1;
+        String property = System.getProperty(SPEED_PROPERTY);
+        if (property != null) {
+            try {
+                setSpeed(Double.parseDouble(property));
+            } catch (NumberFormatException e) {
+                //Not a number, keep the normal speed
+            }
+        }
+    }
+
+    /**
+     * Returns the animator used by the shapes
+     */
+    public static synchronized Animator getAnimator() {
+        if (shared == null) {
+            shared = new Animator();
+        }
+        return shared;
+    }
+
+    /**
+     * Changes the fast-forward factor
+     * @param speed How many times faster than normal, it must be > 0
+     */
+    public synchronized void setSpeed(double speed) {
+        if (speed > 0) {
+            this.speed = speed;
+        }
+    }
+
+    public synchronized double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Adds a move, it starts on the next play(). A move already added
+     * for the same target is replaced.
+     * @param target What is moved
+     * @param fromX The x coordinate where the move starts
+     * @param fromY The y coordinate where the move starts
+     * @param toX The x coordinate where the move ends
+     * @param toY The y coordinate where the move ends
+     * @param duration The duration in milliseconds at normal speed
+     * @param easing How the move speeds up and slows down
+     */
+    public synchronized void add(Movable target, int fromX, int fromY, int toX, int toY,
+                    long duration, Easing easing) {
+        tweens.remove(target);
+        tweens.put(target, new Tween(fromX, fromY, toX, toY, duration, easing));
+    }
+
+    /**
+     * Returns the number of moves waiting to be played
+     */
+    public synchronized int getPending() {
+        return tweens.size();
+    }
+
+    /**
+     * Returns the number of frames shown by this animator
+     */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Plays every move added, all of them at the same time, and returns
+     * when the longest one has finished. Moves that nobody can watch end
+     * at once, see the class comment.
+     * @return The number of frames shown
+     */
+    public synchronized int play() {
+        finishHidden();
+        if (tweens.isEmpty()) {
+            return 0;
+        }
+        Canvas canvas = Canvas.getCanvas();
+        //Frames that are not paced are not seen, the moves end on the first one
+        boolean jump = !canvas.isPresentationMode() || speed == Double.POSITIVE_INFINITY;
+        long frameInterval = 1000000000L / canvas.getFrameRate();
+        long start = System.nanoTime();
+        int shown = 0;
+        while (!tweens.isEmpty()) {
+            long frameStart = System.nanoTime();
+            //0 * infinity is not a number, so the jump is kept apart
+            double time = jump ? Double.POSITIVE_INFINITY : (frameStart - start) / 1e6 * speed;
+            canvas.beginBatch();
+            try {
+                Iterator<Map.Entry<Movable, Tween>> moves = tweens.entrySet().iterator();
+                while (moves.hasNext()) {
+                    Map.Entry<Movable, Tween> move = moves.next();
+                    Tween tween = move.getValue();
+                    double progress = tween.duration == 0 ? 1 : Math.min(1, time / tween.duration);
+                    move.getKey().setPosition(tween.x(progress), tween.y(progress));
+                    if (progress >= 1) {
+                        moves.remove();
+                    }
+                }
+            } finally {
+                canvas.commit();
+            }
+            shown++;
+            if (!tweens.isEmpty()) {
+                sleepUntil(frameStart + frameInterval);
+            }
+        }
+        frames += shown;
+        return shown;
+    }
+
+    /**
+     * Moves a target slowly to a position with the shared animator and
+     * waits until it gets there
+     */
+    public static void slowMove(Movable target, int fromX, int fromY, int toX, int toY) {
+        Animator animator = getAnimator();
+        long distance = Math.max(Math.abs((long) toX - fromX), Math.abs((long) toY - fromY));
+        synchronized (animator) {
+            animator.add(target, fromX, fromY, toX, toY, durationFor(distance), Easing.EASE_IN_OUT);
+            animator.play();
+        }
+    }
+
+    /**
+     * Returns the duration in milliseconds of a slow move of some pixels
+     */
+    public static long durationFor(long pixels) {
+        return Math.max(MIN_DURATION, pixels * 1000 / PIXELS_PER_SECOND);
+    }
+
+    //Private auxiliary methods
+    /**
+     * Puts the targets that are not visible at the end of their moves. They
+     * are not drawn, so the canvas is not needed
+     */
+    private void finishHidden() {
+        Iterator<Map.Entry<Movable, Tween>> moves = tweens.entrySet().iterator();
+        while (moves.hasNext()) {
+            Map.Entry<Movable, Tween> move = moves.next();
+            if (!move.getKey().isVisible()) {
+                move.getKey().setPosition(move.getValue().toX, move.getValue().toY);
+                moves.remove();
+            }
+        }
+    }
+
+    /**
+     * Waits for the next frame, the time spent on the frame is not waited again
+     */
+    private static void sleepUntil(long time) {
+        long remaining = time - System.nanoTime();
+        if (remaining <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+            SimulatorMetrics.slept(remaining);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A move from one position to another
+     */
+    private static class Tween {
+        private int fromX;
+        private int fromY;
+        private int toX;
+        private int toY;
+        private double duration;
+        private Easing easing;
+
+        public Tween(int fromX, int fromY, int toX, int toY, long duration, Easing easing) {
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.toX = toX;
+            this.toY = toY;
+            //A move of no duration ends on its first frame
+            this.duration = Math.max(duration, 0);
+            this.easing = easing == null ? Easing.LINEAR : easing;
+        }
+
+        public int x(double progress) {
+            return (int) Math.round(fromX + ((double) toX - fromX) * easing.apply(progress));
+        }
+
+        public int y(double progress) {
+            return (int) Math.round(fromY + ((double) toY - fromY) * easing.apply(progress));
+        }
+    }
+}
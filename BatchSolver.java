@@ -0,0 +1,324 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * BatchSolver - Solves many tower queries in parallel with TowerSolver.
+ *
+ * Input: one query "n h" per line. Output: one line per query, in the same
+ * order, with the items from bottom to top separated by spaces (id for a
+ * cup, -id for a lid, like Tower.load), or "impossible". Blank lines are copied as blank lines and lines that cannot
+ * be read give "error".
+ *
+ * The queries are read in blocks, each block is solved with a parallel
+ * stream inside a ForkJoinPool and written before the next block is read.
+ * The answers of a block are all in memory at once, and an answer has
+ * up to 2n items, so a block ends at BLOCK_SIZE queries or when the
+ * answers could pass BLOCK_CHARS chars (answerLength is an upper bound
+ * read from n alone). A query whose answer alone could pass BLOCK_CHARS
+ * is solved by itself and written as it is made, without building its
+ * line. So the memory used depends on the largest n of the file, about
+ * 4 bytes per item for its solution, and not on the number of queries.
+ * Repeated queries can be answered from a SolverCache.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class BatchSolver {
+    private static final int BLOCK_SIZE = 1 << 14;
+    //Chars of the answers of a block, 16 MB
+    private static final long BLOCK_CHARS = 1 << 23;
+    //Chars kept of an answer written as it is made
+    private static final int CHUNK_CHARS = 1 << 13;
+
+    private ForkJoinPool pool;
+    private SolverCache cache;
+
+    /**
+     * Constructor
+     * @param parallelism The number of threads used to solve
+     */
+    public BatchSolver(int parallelism) {
+        this(parallelism, null);
+    }
+
+    /**
+     * Constructor
+     * @param parallelism The number of threads used to solve
+     * @param cache The cache of solutions, or null to always solve
+     */
+    public BatchSolver(int parallelism, SolverCache cache) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.cache = cache;
+    }
+
+    /**
+     * Solves every query of the input and writes the answers in input order
+     * @param in The queries, one per line
+     * @param out Where the answers are written
+     * @return The number of queries solved
+     * @throws IOException if the input cannot be read or the output written
+     */
+    public long solveAll(Reader in, Writer out) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        String[] queries = new String[BLOCK_SIZE];
+        String[] answers = new String[BLOCK_SIZE];
+        long total = 0;
+        String line = reader.readLine();
+        while (line != null) {
+            int count = 0;
+            long chars = answerLength(line);
+            while (count < BLOCK_SIZE && chars <= BLOCK_CHARS) {
+                queries[count++] = line;
+                line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                chars += answerLength(line);
+            }
+            if (count == 0) {
+                writeAnswer(line, cache, new StringBuilder(CHUNK_CHARS), out);
+                out.write('\n');
+                line = reader.readLine();
+                total++;
+                continue;
+            }
+            solveBlock(queries, answers, count);
+            for (int i = 0; i < count; i++) {
+                out.write(answers[i]);
+                out.write('\n');
+                answers[i] = null;
+            }
+            total += count;
+        }
+        out.flush();
+        return total;
+    }
+
+    /**
+     * Stops the threads of the solver
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Solves a single query line
+     * @param query "n h"
+     * @return The answer line
+     */
+    public static String solveLine(String query) {
+        return solveLine(query, null);
+    }
+
+    /**
+     * Solves a single query line using a cache of solutions
+     * @param query "n h"
+     * @param cache The cache of solutions, or null to always solve
+     * @return The answer line
+     */
+    public static String solveLine(String query, SolverCache cache) {
+        StringBuilder answer = new StringBuilder((int) Math.min(answerLength(query), CHUNK_CHARS));
+        try {
+            writeAnswer(query, cache, answer, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); //nothing is written
+        }
+        return answer.toString();
+    }
+
+    /**
+     * Returns an upper bound of the chars of the answer to a query, from
+     * its n alone: at most n cups and n lids of up to the digits of n
+     * plus a sign and a space each
+     */
+    static long answerLength(String query) {
+        String text = query.trim();
+        int end = 0;
+        while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+            end++;
+        }
+        try {
+            int n = Integer.parseInt(text.substring(0, end));
+            if (n > 0) {
+                return 2L * n * (Integer.toString(n).length() + 2);
+            }
+        } catch (NumberFormatException e) {
+            //answered with error
+        }
+        return "impossible".length();
+    }
+
+    //Private auxiliary methods
+    /**
+     * Makes the answer to a query line, without the line end
+     * @param answer Where the answer is made
+     * @param out If not null, the answer is moved from answer to out every
+     *            CHUNK_CHARS chars and at the end, so it is never whole in memory
+     */
+    private static void writeAnswer(String query, SolverCache cache, StringBuilder answer, Writer out)
+        throws IOException {
+        String text = query.trim();
+        if (!text.isEmpty()) {
+            String[] parts = text.split("\\s+");
+            if (parts.length == 2) {
+                appendSolution(parts, cache, answer, out);
+            } else {
+                answer.append("error");
+            }
+        }
+        drain(answer, out, 0);
+    }
+
+    /**
+     * Makes the answer to the two parts of a query
+     */
+    private static void appendSolution(String[] parts, SolverCache cache, StringBuilder answer, Writer out)
+        throws IOException {
+        //Only the stacked cups are computed or cached, the rest of the
+        //order is written straight from them
+        int[] solution;
+        try {
+            int n = Integer.parseInt(parts[0]);
+            if (parts[1].length() <= 18) {
+                long h = Long.parseLong(parts[1]);
+                solution = cache == null ? TowerSolver.stackedCups(n, h) : cache.stackedCups(n, h);
+            } else {
+                BigInteger h = new BigInteger(parts[1]);
+                solution = cache == null ? TowerSolver.stackedCups(n, h) : cache.stackedCups(n, h);
+            }
+        } catch (NumberFormatException e) {
+            answer.append("error");
+            return;
+        }
+        if (solution == null) {
+            answer.append("impossible");
+        } else {
+            format(solution, answer, out);
+        }
+    }
+
+    /**
+     * Moves the answer made so far to out once it has more than limit chars
+     */
+    private static void drain(StringBuilder answer, Writer out, int limit) throws IOException {
+        if (out != null && answer.length() > limit) {
+            out.append(answer);
+            answer.setLength(0);
+        }
+    }
+
+    /**
+     * Writes the whole order of a solution straight from its stacked cups,
+     * in the same order as TowerSolver.expand
+     */
+    private static void format(int[] stacked, StringBuilder answer, Writer out) throws IOException {
+        boolean first = true;
+        int previous = 0;
+        for (int item : stacked) {
+            //A stacked cup is followed by the cups it hides, a lid stands alone
+            int last = item > 0 ? previous + 1 : item;
+            for (int id = item; id >= last; id--) {
+                if (!first) {
+                    answer.append(' ');
+                }
+                answer.append(id);
+                first = false;
+            }
+            drain(answer, out, CHUNK_CHARS);
+            if (item > 0) {
+                previous = item;
+            }
+        }
+    }
+
+    /**
+     * Solves the first count queries of a block in parallel
+     */
+    private void solveBlock(String[] queries, String[] answers, int count) throws IOException {
+        try {
+            pool.submit(() -> IntStream.range(0, count).parallel()
+                                       .forEach(i -> answers[i] = solveLine(queries[i], cache))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while solving", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error while solving", e.getCause());
+        }
+    }
+
+    /**
+     * Solves a file of queries.
+     * Usage: java BatchSolver input output [threads] [cacheEntries]
+     * or java BatchSolver -scaling queries n to measure the throughput with
+     * 1 to all the available cores on generated queries
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 1 && args[0].equals("-scaling")) {
+            int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+            int n = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+            scaling(queries, n);
+            return;
+        }
+        if (args.length < 2) {
+            System.out.println("Usage: java BatchSolver input output [threads] [cacheEntries]");
+            System.out.println("       java BatchSolver -scaling [queries] [n]");
+            return;
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                                       : Runtime.getRuntime().availableProcessors();
+        SolverCache cache = null;
+        if (args.length > 3) {
+            cache = new SolverCache(Integer.parseInt(args[3]), 256L << 20);
+        }
+        BatchSolver solver = new BatchSolver(threads, cache);
+        try (Reader in = new FileReader(args[0]);
+             Writer out = new BufferedWriter(new FileWriter(args[1]), 1 << 16)) {
+            long start = System.nanoTime();
+            long total = solver.solveAll(in, out);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d queries in %.3f s (%.0f queries/s)%n", total, seconds, total / seconds);
+            if (cache != null) {
+                System.out.printf("cache hits=%d misses=%d evictions=%d%n",
+                                  cache.getHits(), cache.getMisses(), cache.getEvictions());
+            }
+        } finally {
+            solver.shutdown();
+        }
+    }
+
+    /**
+     * Measures queries per second from 1 thread to all the available cores
+     */
+    private static void scaling(int queries, int n) throws IOException {
+        StringBuilder input = new StringBuilder();
+        long low = 1L << Math.min(n - 1, 62);
+        for (int i = 0; i < queries; i++) {
+            input.append(n).append(' ').append(low + i).append('\n');
+        }
+        String text = input.toString();
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = 0;
+        while (threads < cores) {
+            threads = Math.min(Math.max(1, threads * 2), cores);
+            BatchSolver solver = new BatchSolver(threads);
+            solver.solveAll(new StringReader(text), new StringWriter()); //warm up
+            long start = System.nanoTime();
+            solver.solveAll(new StringReader(text), new StringWriter());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            solver.shutdown();
+            System.out.printf("threads=%d queries/s=%.0f%n", threads, queries / seconds);
+        }
+    }
+}
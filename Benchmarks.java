@@ -0,0 +1,411 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Benchmarks - Measures Canvas, shapes, animations, Cup, Lid, Tower and TowerSolver operations.
+ *
+ * Every case is run at several sizes: it is warmed up first and then run
+ * repeatedly for a fixed time, and the average time per operation is
+ * reported. The results can be written as JSON to compare runs over time.
+ * The canvas is used in headless, no delay mode so that only the work of
+ * the simulator is measured.
+ *
+ * Usage: java Benchmarks [-json results.json] [-quick] [-only prefix]
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class Benchmarks {
+    //Keeps the results alive so the JIT cannot drop the measured work
+    public static volatile long sink;
+    //Rectangles on the canvas, removed before the next scene is built
+    private static List<Rectangle> lastScene = new ArrayList<Rectangle>();
+    private static List<Cup> lastCups = new ArrayList<Cup>();
+    //Threads running next to a multi-threaded case, stopped before the next one
+    private static List<Thread> background = new ArrayList<Thread>();
+    private static volatile boolean backgroundRunning;
+
+    private long warmupNanos;
+    private long measureNanos;
+    private String only;
+    private List<String> results;
+
+    /**
+     * A measured operation, prepared for a given size
+     */
+    private interface Case {
+        /**
+         * Prepares the state for a size and returns the operation to measure
+         */
+        Runnable setUp(int size);
+    }
+
+    /**
+     * Constructor
+     * @param quick true to use short warmup and measure times
+     * @param only Prefix of the cases to run, or null to run all of them
+     */
+    public Benchmarks(boolean quick, String only) {
+        this.warmupNanos = quick ? 50000000L : 300000000L;
+        this.measureNanos = quick ? 100000000L : 1000000000L;
+        this.only = only;
+        this.results = new ArrayList<String>();
+    }
+
+    /**
+     * Runs all the benchmarks
+     */
+    public static void main(String[] args) throws IOException {
+        if (System.getProperty(Canvas.HEADLESS_PROPERTY) == null) {
+            System.setProperty(Canvas.HEADLESS_PROPERTY, "true");
+        }
+        if (System.getProperty(Canvas.MODE_PROPERTY) == null) {
+            System.setProperty(Canvas.MODE_PROPERTY, "nodelay");
+        }
+        String jsonFile = null;
+        boolean quick = false;
+        String only = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-json") && i + 1 < args.length) {
+                jsonFile = args[++i];
+            } else if (args[i].equals("-quick")) {
+                quick = true;
+            } else if (args[i].equals("-only") && i + 1 < args.length) {
+                only = args[++i];
+            }
+        }
+        Benchmarks benchmarks = new Benchmarks(quick, only);
+        benchmarks.runAll();
+        if (jsonFile != null) {
+            try (Writer out = new FileWriter(jsonFile)) {
+                out.write(benchmarks.toJson());
+            }
+        }
+    }
+
+    /**
+     * Runs every case at its sizes
+     */
+    public void runAll() {
+        int[] sceneSizes = {10, 100, 1000, 10000, 100000};
+        int[] towerSizes = {10, 40, 63};
+        //Cup ids stop at 63, but a tower can hold any number of lids
+        int[] lidTowerSizes = {1000, 10000, 100000, 1000000};
+        int[] solverSizes = {10, 100, 1000, 10000, 100000, 1000000};
+        int[] threadCounts = {1, 2, 4, 8};
+        int[] renderSizes = {1000, 10000, 100000};
+
+        run("canvas.draw", sceneSizes, size -> {
+            List<Rectangle> scene = scene(size);
+            Rectangle moving = scene.get(0);
+            return () -> moving.setPosition((int) (sink++ & 255), 20);
+        });
+        run("canvas.erase", sceneSizes, size -> {
+            List<Rectangle> scene = scene(size);
+            Rectangle blinking = scene.get(0);
+            return () -> {
+                blinking.makeInvisible();
+                blinking.makeVisible();
+            };
+        });
+        run("canvas.redraw", sceneSizes, size -> {
+            List<Rectangle> scene = scene(size);
+            Rectangle moving = scene.get(0);
+            Canvas canvas = Canvas.getCanvas();
+            return () -> {
+                moving.setPosition((int) (sink++ & 255), 20);
+                sink += canvas.getFrame().getRGB(0, 0);
+            };
+        });
+        //Full repaint of a canvas covered by cups, filling rectangles or copying sprites
+        run("render.shapes", renderSizes, size -> {
+            Canvas canvas = cupScene(size, false);
+            return () -> {
+                canvas.setViewport(0, 0, 1);
+                sink += canvas.getFrame().getRGB(0, 0);
+            };
+        });
+        run("render.sprites", renderSizes, size -> {
+            Canvas canvas = cupScene(size, true);
+            return () -> {
+                canvas.setViewport(0, 0, 1);
+                sink += canvas.getFrame().getRGB(0, 0);
+            };
+        });
+        //One frame of an animation moving every rectangle of the scene
+        run("animation.frame", sceneSizes, size -> {
+            List<Rectangle> scene = scene(size);
+            Animator animator = new Animator();
+            animator.setSpeed(Double.POSITIVE_INFINITY);
+            return () -> {
+                int offset = (int) (sink++ & 7);
+                for (int i = 0; i < scene.size(); i++) {
+                    animator.add(scene.get(i), i % 280, 0, i % 280, offset, 1000, Animator.Easing.EASE_IN_OUT);
+                }
+                sink += animator.play();
+            };
+        });
+        clearCanvas();
+        run("cup.new", towerSizes, size -> () -> sink += new Cup(size).getHeight());
+        run("cup.setPosition", towerSizes, size -> {
+            clearCanvas();
+            Cup cup = new Cup(Math.min(size, 5));
+            cup.makeVisible();
+            return () -> cup.setPosition((int) (sink++ & 255), 250);
+        });
+        run("lid.pair", towerSizes, size -> {
+            Cup cup = new Cup(size);
+            Lid lid = new Lid(size);
+            return () -> {
+                lid.pairWith(cup);
+                sink += cup.isLidded() ? 1 : 0;
+                lid.unpair();
+            };
+        });
+        run("tower.pushPop", towerSizes, size -> {
+            Tower tower = fullTower(size - 1);
+            return () -> {
+                tower.pushCup(size);
+                tower.popCup();
+            };
+        });
+        run("tower.removeBottom", towerSizes, size -> {
+            Tower tower = fullTower(size);
+            return () -> {
+                tower.removeCup(1);
+                tower.pushCup(1);
+            };
+        });
+        run("tower.height", towerSizes, size -> {
+            Tower tower = fullTower(size);
+            return () -> sink += tower.height();
+        });
+        run("lidTower.pushPop", lidTowerSizes, size -> {
+            Tower tower = lidTower(size);
+            return () -> {
+                tower.pushLid(size + 1);
+                tower.popLid();
+            };
+        });
+        //The items above the removed lid are placed again: O(n)
+        run("lidTower.removeBottom", lidTowerSizes, size -> {
+            Tower tower = lidTower(size);
+            return () -> {
+                tower.removeLid(1);
+                tower.undo();
+            };
+        });
+        run("lidTower.height", lidTowerSizes, size -> {
+            Tower tower = lidTower(size);
+            return () -> sink += tower.height();
+        });
+        run("concurrentTower.lidPushPop", lidTowerSizes, size -> {
+            ConcurrentTower tower = new ConcurrentTower(10, Long.MAX_VALUE);
+            tower.load(lidTower(size).getStackOrder());
+            return () -> {
+                tower.pushCup(1);
+                tower.popCup();
+            };
+        });
+        //size = number of threads running next to the measured one
+        run("concurrentTower.readWhileWriting", threadCounts, size -> {
+            ConcurrentTower tower = concurrentTower();
+            startBackground(size, () -> {
+                tower.pushCup(40);
+                tower.popCup();
+            });
+            return () -> sink += tower.snapshot().height();
+        });
+        run("concurrentTower.writeWhileReading", threadCounts, size -> {
+            ConcurrentTower tower = concurrentTower();
+            startBackground(size, () -> sink += tower.snapshot().items());
+            return () -> {
+                tower.pushCup(40);
+                tower.popCup();
+            };
+        });
+        stopBackground();
+        run("solver.solve", solverSizes, size -> {
+            BigInteger h = BigInteger.ONE.shiftLeft(size - 1).add(BigInteger.valueOf(size));
+            return () -> sink += TowerSolver.solve(size, h).length;
+        });
+        clearCanvas();
+    }
+
+    /**
+     * Returns the results as a JSON array
+     */
+    public String toJson() {
+        return "[\n" + String.join(",\n", results) + "\n]\n";
+    }
+
+    //Private auxiliary methods
+    /**
+     * Measures a case at every size and prints the results
+     */
+    private void run(String name, int[] sizes, Case benchmark) {
+        if (only != null && !name.startsWith(only)) {
+            return;
+        }
+        for (int size : sizes) {
+            Runnable operation = benchmark.setUp(size);
+            loop(operation, warmupNanos);
+            long start = System.nanoTime();
+            long ops = loop(operation, measureNanos);
+            double nanosPerOp = (double) (System.nanoTime() - start) / ops;
+            System.out.printf(Locale.ROOT, "%-20s size=%-8d %14.1f ns/op%n", name, size, nanosPerOp);
+            results.add(String.format(Locale.ROOT,
+                "  {\"benchmark\": \"%s\", \"size\": %d, \"ops\": %d, \"nsPerOp\": %.1f}",
+                name, size, ops, nanosPerOp));
+        }
+    }
+
+    /**
+     * Runs an operation for a given time
+     * @return The number of times it was run
+     */
+    private static long loop(Runnable operation, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long ops = 0;
+        do {
+            for (int i = 0; i < 16; i++) {
+                operation.run();
+            }
+            ops += 16;
+        } while (System.nanoTime() < end);
+        return ops;
+    }
+
+    /**
+     * Leaves exactly size visible rectangles on the canvas
+     */
+    private static List<Rectangle> scene(int size) {
+        clearCanvas();
+        List<Rectangle> scene = new ArrayList<Rectangle>(size);
+        Canvas canvas = Canvas.getCanvas();
+        canvas.beginBatch();
+        for (int i = 0; i < size; i++) {
+            Rectangle rectangle = new Rectangle();
+            rectangle.setBounds(i % 280, (i / 280) % 280, 20, 10);
+            rectangle.makeVisible();
+            scene.add(rectangle);
+        }
+        canvas.commit();
+        lastScene = scene;
+        return scene;
+    }
+
+    /**
+     * Leaves exactly size visible cups (ids 1 to 5) on the canvas
+     * @param sprites true to draw them with sprites, false with rectangles
+     */
+    private static Canvas cupScene(int size, boolean sprites) {
+        clearCanvas();
+        boolean wasEnabled = SpriteCache.isEnabled();
+        SpriteCache.setEnabled(sprites);
+        List<Cup> cups = new ArrayList<Cup>(size);
+        Canvas canvas = Canvas.getCanvas();
+        canvas.beginBatch();
+        for (int i = 0; i < size; i++) {
+            Cup cup = new Cup(1 + i % 5);
+            cup.setPosition((i * 7) % 280, 180 + (i / 40) % 110);
+            cup.makeVisible();
+            cups.add(cup);
+        }
+        canvas.commit();
+        SpriteCache.setEnabled(wasEnabled);
+        lastCups = cups;
+        return canvas;
+    }
+
+    /**
+     * Removes the rectangles and cups of the last scene from the canvas
+     */
+    private static void clearCanvas() {
+        Canvas canvas = Canvas.getCanvas();
+        canvas.beginBatch();
+        for (Rectangle rectangle : lastScene) {
+            rectangle.makeInvisible();
+        }
+        for (Cup cup : lastCups) {
+            cup.makeInvisible();
+        }
+        canvas.commit();
+        lastScene = new ArrayList<Rectangle>();
+        lastCups = new ArrayList<Cup>();
+    }
+
+    /**
+     * Starts threads that repeat an operation until stopBackground
+     */
+    private static void startBackground(int threads, Runnable operation) {
+        stopBackground();
+        backgroundRunning = true;
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                while (backgroundRunning) {
+                    operation.run();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+            background.add(thread);
+        }
+    }
+
+    /**
+     * Stops the threads started by startBackground
+     */
+    private static void stopBackground() {
+        backgroundRunning = false;
+        for (Thread thread : background) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        background.clear();
+    }
+
+    /**
+     * Returns a concurrent tower with the cups 1..30 stacked
+     */
+    private static ConcurrentTower concurrentTower() {
+        stopBackground();
+        ConcurrentTower tower = new ConcurrentTower(10, Long.MAX_VALUE);
+        for (int i = 1; i <= 30; i++) {
+            tower.pushCup(i);
+        }
+        return tower;
+    }
+
+    /**
+     * Returns an invisible tower with the lids 1..size, each one on the one before
+     */
+    private static Tower lidTower(int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = -(i + 1);
+        }
+        Tower tower = new Tower(10, Long.MAX_VALUE);
+        tower.load(order);
+        return tower;
+    }
+
+    /**
+     * Returns an invisible tower with the cups 1..size stacked
+     */
+    private static Tower fullTower(int size) {
+        Tower tower = new Tower(10, Long.MAX_VALUE);
+        for (int i = 1; i <= size; i++) {
+            tower.pushCup(i);
+        }
+        return tower;
+    }
+}
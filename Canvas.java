@@ -1,7 +1,17 @@
 import javax.swing.*;
+import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Canvas is a class to allow for simple graphical drawing on a canvas.
@@ -19,29 +29,131 @@ public class Canvas{
     // is done on purpose to keep the interface and instance fields of the
     // shape objects in this project clean and simple for educational purposes.
 
+	/**
+	 * System property that selects the headless canvas ("true" or "false").
+	 * When it is not set, the canvas is headless only if the JVM has no
+	 * display available.
+	 */
+	public static final String HEADLESS_PROPERTY = "canvas.headless";
+
+	/**
+	 * System property that selects the frame mode: "presentation" paces the
+	 * frames to the frame rate so animations can be followed, "nodelay"
+	 * shows every frame as fast as possible. By default the window canvas
+	 * uses presentation mode and the headless canvas uses no delay.
+	 */
+	public static final String MODE_PROPERTY = "canvas.mode";
+
+	/**
+	 * System property with the frames per second of presentation mode.
+	 */
+	public static final String FPS_PROPERTY = "canvas.fps";
+
+	/**
+	 * System property that moves the painting to a render thread ("thread").
+	 * By default the thread that draws a shape also paints it.
+	 */
+	public static final String RENDER_PROPERTY = "canvas.render";
+
+	private static final int DEFAULT_FPS = 100;
+
+	// Colors already resolved, by name or by hex/RGB string. Each string is
+	// parsed once and shares the same Color object afterwards.
+	private static final Map <String,Color> colorTable = createColorTable();
+
 	private static Canvas canvasSingleton;
 
+	/**
+	 * A drawing that paints itself instead of being a fixed Shape, so that
+	 * it only paints what falls inside the area being painted (for example
+	 * the ticks of a ruler).
+	 */
+	public interface Painter{
+		/**
+		 * Paint the part of the drawing inside an area.
+		 * @param  graphic  where to paint, in world coordinates (it may be scaled)
+		 * @param  area     the world area being painted
+		 */
+		void paint(Graphics2D graphic, Rectangle2D area);
+	}
+
 	/**
 	 * Factory method to get the canvas singleton object.
 	 */
 	public static Canvas getCanvas(){
 		if(canvasSingleton == null) {
 			canvasSingleton = new Canvas("BlueJ Shapes Demo", 300, 300, 
-										 Color.white);
+										 Color.white, headlessRequested());
 		}
 		canvasSingleton.setVisible(true);
 		return canvasSingleton;
 	}
 
+	/**
+	 * Factory method to get the canvas singleton object choosing the backend.
+	 * The choice is only taken into account the first time the canvas is
+	 * created; afterwards the existing canvas is returned.
+	 * @param headless  true to render into an off-screen image without a window
+	 */
+	public static Canvas getCanvas(boolean headless){
+		if(canvasSingleton == null) {
+			canvasSingleton = new Canvas("BlueJ Shapes Demo", 300, 300, 
+										 Color.white, headless);
+		}
+		return getCanvas();
+	}
+
+	/**
+	 * Tell if the headless backend was asked for through the system property
+	 * or because there is no display.
+	 */
+	private static boolean headlessRequested(){
+		String property = System.getProperty(HEADLESS_PROPERTY);
+		if(property != null) {
+			return Boolean.parseBoolean(property);
+		}
+		return GraphicsEnvironment.isHeadless();
+	}
+
 	//  ----- instance part -----
 
     private JFrame frame;
     private CanvasPane canvas;
     private Graphics2D graphic;
+    private BufferedImage scratchImage;  // dirty areas are painted here and copied
+    private Graphics2D scratchGraphic;
     private Color backgroundColour;
     private Image canvasImage;
-    private List <Object> objects;
-    private HashMap <Object,ShapeDescription> shapes;
+    private boolean headless;
+    private int width;
+    private int height;
+    private LinkedHashMap <Object,ShapeDescription> shapes;
+    private int batchDepth;
+    private boolean pendingRedraw;
+    // World area changed since the last paint, null if none. World areas are
+    // kept in doubles: a tall tower can span more than the int range.
+    private Rectangle2D dirty;
+    // Viewport asked for by the callers and viewport the shapes are painted
+    // with. They only differ while the render thread has not caught up.
+    private volatile Viewport viewport;
+    private Viewport paintedViewport;
+    private volatile boolean presentationMode;
+    private volatile long frameInterval;
+    private long nextFrameTime;
+    // Render thread: when it runs, callers only queue their changes and the
+    // thread applies, paints and shows them. The shapes, the dirty area and
+    // the images then belong to it.
+    private volatile Thread renderThread;
+    private boolean renderRequested;
+    private boolean rendering;
+    private ConcurrentLinkedQueue <Runnable> renderTasks;
+    private LinkedHashMap <Object,ShapeDescription> stagedChanges;  // open batch, a null value erases
+    private Viewport stagedViewport;
+    // bounds each changed shape had at the last paint, null if it was not drawn
+    private HashMap <Object,java.awt.Rectangle> touched;
+    private BufferedImage frontImage;  // last finished frame, shown by the window
+    private Graphics2D frontGraphic;
+    private final Object frontLock = new Object();
     
     /**
      * Create a Canvas.
@@ -49,17 +161,36 @@ public class Canvas{
      * @param width  the desired width for the canvas
      * @param height  the desired height for the canvas
      * @param bgClour  the desired background colour of the canvas
+     * @param headless  true to draw into an off-screen image with no window
      */
-    private Canvas(String title, int width, int height, Color bgColour){
-        frame = new JFrame();
-        canvas = new CanvasPane();
-        frame.setContentPane(canvas);
-        frame.setTitle(title);
-        canvas.setPreferredSize(new Dimension(width, height));
+    private Canvas(String title, int width, int height, Color bgColour,
+                   boolean headless){
+        this.headless = headless;
+        this.width = width;
+        this.height = height;
         backgroundColour = bgColour;
-        frame.pack();
-        objects = new ArrayList <Object>();
-        shapes = new HashMap <Object,ShapeDescription>();
+        if(!headless) {
+            frame = new JFrame();
+            canvas = new CanvasPane();
+            frame.setContentPane(canvas);
+            frame.setTitle(title);
+            canvas.setPreferredSize(new Dimension(width, height));
+            frame.pack();
+            Dimension size = canvas.getSize();
+            this.width = size.width;
+            this.height = size.height;
+        }
+        shapes = new LinkedHashMap <Object,ShapeDescription>();
+        viewport = new Viewport(0, 0, 1);
+        paintedViewport = viewport;
+        stagedChanges = new LinkedHashMap <Object,ShapeDescription>();
+        renderRequested = "thread".equalsIgnoreCase(System.getProperty(RENDER_PROPERTY));
+        presentationMode = !headless;
+        String mode = System.getProperty(MODE_PROPERTY);
+        if(mode != null) {
+            presentationMode = mode.equalsIgnoreCase("presentation");
+        }
+        setFrameRate(Integer.getInteger(FPS_PROPERTY, DEFAULT_FPS));
     }
 
     /**
@@ -73,14 +204,78 @@ public class Canvas{
         if(graphic == null) {
             // first time: instantiate the offscreen image and fill it with
             // the background colour
-            Dimension size = canvas.getSize();
-            canvasImage = canvas.createImage(size.width, size.height);
+            if(headless) {
+                canvasImage = new BufferedImage(width, height,
+                                                BufferedImage.TYPE_INT_RGB);
+            } else {
+                canvasImage = canvas.createImage(width, height);
+            }
             graphic = (Graphics2D)canvasImage.getGraphics();
             graphic.setColor(backgroundColour);
-            graphic.fillRect(0, 0, size.width, size.height);
+            graphic.fillRect(0, 0, width, height);
             graphic.setColor(Color.black);
+            scratchImage = new BufferedImage(width, height,
+                                             BufferedImage.TYPE_INT_RGB);
+            scratchGraphic = scratchImage.createGraphics();
+            if(renderRequested) {
+                setRenderThread(true);
+            }
+        }
+        if(!headless) {
+            frame.setVisible(visible);
         }
-        frame.setVisible(visible);
+    }
+
+    /**
+     * Tell if this canvas draws into an off-screen image without a window.
+     * @return true for the headless backend
+     */
+    public boolean isHeadless(){
+        return headless;
+    }
+
+    /**
+     * Return an image with the current contents of the canvas. The headless
+     * canvas only paints when a frame is asked for, so this brings the image
+     * up to date first.
+     * @return a copy of the current frame
+     */
+    public BufferedImage getFrame(){
+        if(renderThread != null) {
+            // the frame is taken by the render thread once it has shown
+            // everything queued before
+            CompletableFuture <BufferedImage> frame = new CompletableFuture <BufferedImage>();
+            post(() -> {
+                showFrame();
+                frame.complete(copyFrame());
+            });
+            return frame.join();
+        }
+        if(pendingRedraw && batchDepth == 0) {
+            paintShapes();
+        }
+        return copyFrame();
+    }
+
+    /**
+     * Copy the off-screen image.
+     */
+    private BufferedImage copyFrame(){
+        BufferedImage frameImage = new BufferedImage(width, height,
+                                                     BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = frameImage.createGraphics();
+        g.drawImage(canvasImage, 0, 0, null);
+        g.dispose();
+        return frameImage;
+    }
+
+    /**
+     * Save the current contents of the canvas as a PNG file.
+     * @param  fileName  the name of the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void saveFrame(String fileName) throws IOException{
+        ImageIO.write(getFrame(), "png", new File(fileName));
     }
 
     /**
@@ -92,11 +287,24 @@ public class Canvas{
      // Note: this is a slightly backwards way of maintaining the shape
      // objects. It is carefully designed to keep the visible shape interfaces
      // in this project clean and simple for educational purposes.
+     // The shapes map keeps the drawing order (insertion order), so removing
+     // and re-adding a reference object moves it to the front in O(1).
+     // The shape classes do not override equals, so keys compare by identity.
+     // Only the area covered by the old and the new shape is repainted.
     public void draw(Object referenceObject, String color, Shape shape){
-    	objects.remove(referenceObject);   // just in case it was already there
-    	objects.add(referenceObject);      // add at the end
-    	shapes.put(referenceObject, new ShapeDescription(shape, color));
-    	redraw();
+    	change(referenceObject, new ShapeDescription(shape, getColor(color)));
+    }
+ 
+    /**
+     * Draw a drawing that paints itself onto the canvas.
+     * @param  referenceObject  an object to define identity for this drawing
+     * @param  color            the color the painter starts with
+     * @param  bounds           the world area the painter can paint on
+     * @param  painter          paints the drawing
+     */
+    public void draw(Object referenceObject, String color,
+                     java.awt.Rectangle bounds, Painter painter){
+    	change(referenceObject, new ShapeDescription(bounds, getColor(color), painter));
     }
  
     /**
@@ -104,9 +312,330 @@ public class Canvas{
      * @param  referenceObject  the shape object to be erased 
      */
     public void erase(Object referenceObject){
-    	objects.remove(referenceObject);   // just in case it was already there
-    	shapes.remove(referenceObject);
-    	redraw();
+    	change(referenceObject, null);
+    }
+
+    /**
+     * Draw or erase (description null) a shape. With the render thread the
+     * change is queued, or kept until commit inside a batch, and the caller
+     * goes on without waiting for the painting.
+     */
+    private void change(Object referenceObject, ShapeDescription description){
+    	if(renderThread != null) {
+    		if(batchDepth > 0) {
+    			// only the last change of each shape is kept, in drawing order
+    			stagedChanges.remove(referenceObject);
+    			stagedChanges.put(referenceObject, description);
+    		} else {
+    			post(() -> apply(referenceObject, description));
+    		}
+    	} else if(apply(referenceObject, description)) {
+    		redraw();
+    	}
+    }
+
+    /**
+     * Put a shape in the list, or take it out when description is null,
+     * and mark what has to be painted again.
+     * @return true if the list changed
+     */
+    private boolean apply(Object referenceObject, ShapeDescription description){
+    	ShapeDescription old = shapes.remove(referenceObject);    // just in case it was already there
+    	if(description != null) {
+    		shapes.put(referenceObject, description);
+    	} else if(old == null) {
+    		return false;
+    	}
+    	if(touched != null) {
+    		// render thread: a shape changed many times before a paint only
+    		// dirties where it was at the last paint and where it ends
+    		if(!touched.containsKey(referenceObject)) {
+    			touched.put(referenceObject, old == null ? null : old.bounds);
+    		}
+    	} else {
+    		if(old != null) {
+    			addDirty(old.bounds);
+    		}
+    		if(description != null) {
+    			addDirty(description.bounds);
+    		}
+    	}
+    	return true;
+    }
+
+    /**
+     * Start a batch of changes. While a batch is open, draw and erase only
+     * update the shape list; the canvas is repainted once when the outermost
+     * batch is committed. Batches can be nested.
+     */
+    public void beginBatch(){
+        batchDepth++;
+    }
+
+    /**
+     * Finish a batch of changes started with beginBatch. When the outermost
+     * batch is committed, the canvas is repainted once if anything changed.
+     */
+    public void commit(){
+        if(batchDepth == 0) {
+            return;
+        }
+        batchDepth--;
+        if(batchDepth > 0) {
+            return;
+        }
+        if(renderThread != null) {
+            postStaged();
+        } else if(pendingRedraw) {
+            redraw();
+        }
+    }
+
+    /**
+     * Queue the changes of the batch just committed as one task, so that
+     * the render thread shows all of them in the same frame.
+     */
+    private void postStaged(){
+        if(stagedChanges.isEmpty() && stagedViewport == null) {
+            return;
+        }
+        LinkedHashMap <Object,ShapeDescription> changes = stagedChanges;
+        Viewport next = stagedViewport;
+        stagedChanges = new LinkedHashMap <Object,ShapeDescription>();
+        stagedViewport = null;
+        post(() -> {
+            if(next != null) {
+                showViewport(next);
+            }
+            for(Map.Entry <Object,ShapeDescription> change : changes.entrySet()) {
+                apply(change.getKey(), change.getValue());
+            }
+        });
+    }
+
+    /**
+     * Tell if a batch of changes is currently open.
+     * @return true if beginBatch was called more times than commit
+     */
+    public boolean isBatching(){
+        return batchDepth > 0;
+    }
+
+    /**
+     * Show another part of the world: the world point (x, y) goes to the
+     * top left corner of the canvas and everything is scaled by zoom.
+     * The shapes keep their world coordinates.
+     * @param  x     world x coordinate shown at the left border
+     * @param  y     world y coordinate shown at the top border
+     * @param  zoom  screen pixels per world unit. It must be > 0.
+     */
+    public void setViewport(double x, double y, double zoom){
+        if(!(zoom > 0)) {
+            return;
+        }
+        Viewport next = new Viewport(x, y, zoom);
+        viewport = next;
+        if(renderThread == null) {
+            showViewport(next);
+            redraw();
+        } else if(batchDepth > 0) {
+            stagedViewport = next;
+        } else {
+            post(() -> showViewport(next));
+        }
+    }
+
+    /**
+     * Paint the shapes with a viewport from now on. (Does not repaint.)
+     */
+    private void showViewport(Viewport next){
+        paintedViewport = next;
+        addDirty(next.toWorld(new java.awt.Rectangle(0, 0, width, height)));
+    }
+
+    /**
+     * Move the viewport.
+     * @param  dx  world units to move to the right
+     * @param  dy  world units to move down
+     */
+    public void pan(double dx, double dy){
+        Viewport current = viewport;
+        setViewport(current.x + dx, current.y + dy, current.zoom);
+    }
+
+    /**
+     * Zoom keeping the world point under a canvas pixel in place.
+     * @param  factor   how much the zoom is multiplied (2 doubles the size)
+     * @param  screenX  x coordinate of the fixed point on the canvas
+     * @param  screenY  y coordinate of the fixed point on the canvas
+     */
+    public void zoomAt(double factor, int screenX, int screenY){
+        Viewport current = viewport;
+        double newZoom = current.zoom * factor;
+        double worldX = current.toWorldX(screenX);
+        double worldY = current.toWorldY(screenY);
+        setViewport(worldX - screenX / newZoom, worldY - screenY / newZoom, newZoom);
+    }
+
+    /**
+     * Return the world x coordinate shown at the left border.
+     */
+    public double getViewX(){
+        return viewport.x;
+    }
+
+    /**
+     * Return the world y coordinate shown at the top border.
+     */
+    public double getViewY(){
+        return viewport.y;
+    }
+
+    /**
+     * Return the screen pixels per world unit.
+     */
+    public double getZoom(){
+        return viewport.zoom;
+    }
+
+    /**
+     * Convert a world x coordinate to a canvas x coordinate.
+     */
+    public double toScreenX(double worldX){
+        return viewport.toScreenX(worldX);
+    }
+
+    /**
+     * Convert a world y coordinate to a canvas y coordinate.
+     */
+    public double toScreenY(double worldY){
+        return viewport.toScreenY(worldY);
+    }
+
+    /**
+     * Convert a canvas x coordinate to a world x coordinate.
+     */
+    public double toWorldX(double screenX){
+        return viewport.toWorldX(screenX);
+    }
+
+    /**
+     * Convert a canvas y coordinate to a world y coordinate.
+     */
+    public double toWorldY(double screenY){
+        return viewport.toWorldY(screenY);
+    }
+
+    /**
+     * Return the part of the world shown on the canvas.
+     * @return the visible area in world coordinates
+     */
+    public Rectangle2D getVisibleArea(){
+        return viewport.toWorld(new java.awt.Rectangle(0, 0, width, height));
+    }
+
+    /**
+     * Paint in a render thread of its own, or go back to painting in the
+     * thread that draws. With the render thread, draw, erase, commit and
+     * the viewport methods only queue the change: the thread applies
+     * everything queued since its last frame, paints the result once and
+     * hands it to the window, so the callers never wait for the painting
+     * or the frame rate. An open batch is shown as it is when switching.
+     * @param  on  true to start the render thread, false to stop it
+     */
+    public void setRenderThread(boolean on){
+        if(on == (renderThread != null)) {
+            return;
+        }
+        if(on) {
+            if(dirty != null) {
+                java.awt.Rectangle area = paintShapes();
+                if(area != null && !headless) {
+                    canvas.repaint(area.x, area.y, area.width, area.height);
+                }
+            }
+            if(!headless) {
+                frontImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                frontGraphic = frontImage.createGraphics();
+                frontGraphic.drawImage(canvasImage, 0, 0, null);
+            }
+            renderTasks = new ConcurrentLinkedQueue <Runnable>();
+            touched = new HashMap <Object,java.awt.Rectangle>();
+            rendering = true;
+            Thread thread = new Thread(this::render, "Canvas renderer");
+            thread.setDaemon(true);
+            renderThread = thread;
+            thread.start();
+        } else {
+            Thread thread = renderThread;
+            postStaged();
+            post(() -> rendering = false);
+            boolean interrupted = false;
+            while(thread.isAlive()) {
+                try{
+                    thread.join();
+                } catch (InterruptedException e){
+                    interrupted = true;
+                }
+            }
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            renderThread = null;
+            renderTasks = null;
+            touched = null;
+            if(frontGraphic != null) {
+                frontGraphic.dispose();
+            }
+            frontImage = null;
+            frontGraphic = null;
+        }
+    }
+
+    /**
+     * Tell if the canvas paints in a render thread.
+     * @return true if the render thread is running
+     */
+    public boolean hasRenderThread(){
+        return renderThread != null;
+    }
+
+    /**
+     * Choose between presentation mode, where each frame is shown for at
+     * least one frame interval so that movements can be followed, and no
+     * delay mode, where frames are shown as fast as they are produced.
+     * @param  presentation  true for presentation mode, false for no delay
+     */
+    public void setPresentationMode(boolean presentation){
+        presentationMode = presentation;
+        nextFrameTime = 0;
+    }
+
+    /**
+     * Tell if the canvas paces its frames for presentation.
+     * @return true in presentation mode, false in no delay mode
+     */
+    public boolean isPresentationMode(){
+        return presentationMode;
+    }
+
+    /**
+     * Set the number of frames per second used in presentation mode.
+     * @param  fps  the frames per second. It must be > 0.
+     */
+    public void setFrameRate(int fps){
+        if(fps <= 0) {
+            return;
+        }
+        frameInterval = 1000000000L / fps;
+        nextFrameTime = 0;
+    }
+
+    /**
+     * Return the number of frames per second used in presentation mode.
+     */
+    public int getFrameRate(){
+        return (int)(1000000000L / frameInterval);
     }
 
     /**
@@ -114,33 +643,84 @@ public class Canvas{
      * @param  newColour   the new colour for the foreground of the Canvas 
      */
     public void setForegroundColor(String colorString){
-		if(colorString.equals("red"))
-			graphic.setColor(Color.red);
-		else if(colorString.equals("black"))
-			graphic.setColor(Color.black);
-		else if(colorString.equals("blue"))
-			graphic.setColor(Color.blue);
-		else if(colorString.equals("yellow"))
-			graphic.setColor(Color.yellow);
-		else if(colorString.equals("green"))
-			graphic.setColor(Color.green);
-		else if(colorString.equals("magenta"))
-			graphic.setColor(Color.magenta);
-		else if(colorString.equals("white"))
-			graphic.setColor(Color.white);
-		else
-			graphic.setColor(Color.black);
+		graphic.setColor(getColor(colorString));
+    }
+
+    /**
+     * Resolve a color string into a Color. Valid strings are the color
+     * names ("red", "black", "blue", "yellow", "green", "magenta", "white",
+     * "cyan", "orange", "pink", "gray"), hex strings like "#1e90ff" and RGB
+     * strings like "30,144,255". Unknown strings are black.
+     * @param  colorString  the color to resolve
+     * @return the shared Color object for that string
+     */
+    public static Color getColor(String colorString){
+        if(colorString == null) {
+            return Color.black;
+        }
+        Color color = colorTable.get(colorString);
+        if(color == null) {
+            color = parseColor(colorString);
+            colorTable.put(colorString, color);
+        }
+        return color;
+    }
+
+    /**
+     * Create the color table with the named colors.
+     */
+    private static Map <String,Color> createColorTable(){
+        Map <String,Color> table = new ConcurrentHashMap <String,Color>();
+        table.put("red", Color.red);
+        table.put("black", Color.black);
+        table.put("blue", Color.blue);
+        table.put("yellow", Color.yellow);
+        table.put("green", Color.green);
+        table.put("magenta", Color.magenta);
+        table.put("white", Color.white);
+        table.put("cyan", Color.cyan);
+        table.put("orange", Color.orange);
+        table.put("pink", Color.pink);
+        table.put("gray", Color.gray);
+        return table;
+    }
+
+    /**
+     * Parse a hex ("#rrggbb") or RGB ("r,g,b") color string.
+     * @return the color, or black if the string is not valid
+     */
+    private static Color parseColor(String colorString){
+        String text = colorString.trim();
+        try{
+            if(text.startsWith("#") && text.length() == 7) {
+                return new Color(Integer.parseInt(text.substring(1), 16));
+            }
+            String[] parts = text.split(",");
+            if(parts.length == 3) {
+                return new Color(Integer.parseInt(parts[0].trim()),
+                                 Integer.parseInt(parts[1].trim()),
+                                 Integer.parseInt(parts[2].trim()));
+            }
+        } catch (IllegalArgumentException e){
+            // not a valid color, use the default below
+        }
+        return Color.black;
     }
 
     /**
      * Wait for a specified number of milliseconds before finishing.
      * This provides an easy way to specify a small delay which can be
-     * used when producing animations.
+     * used when producing animations. Inside a batch nothing is shown
+     * until commit, so the delay is skipped.
      * @param  milliseconds  the number 
      */
     public void wait(int milliseconds){
+        if(batchDepth > 0) {
+            return;
+        }
         try{
             Thread.sleep(milliseconds);
+            SimulatorMetrics.slept(milliseconds * 1000000L);
         } catch (Exception e){
             // ignoring exception at the moment
         }
@@ -150,22 +730,160 @@ public class Canvas{
 	 * Redraw ell shapes currently on the Canvas.
 	 */
 	private void redraw(){
-		erase();
-		for(Iterator i=objects.iterator(); i.hasNext(); ) {
-                       shapes.get(i.next()).draw(graphic);
-        }
-        canvas.repaint();
+		if(batchDepth > 0 || headless) {
+			// the headless canvas paints only when a frame is asked for
+			pendingRedraw = true;
+			return;
+		}
+		java.awt.Rectangle area = paintShapes();
+		if(area != null) {
+			canvas.repaint(area.x, area.y, area.width, area.height);
+		}
+		if(presentationMode) {
+			waitForNextFrame();
+		}
+	}
+
+	/**
+	 * Queue a change for the render thread and wake it up.
+	 */
+	private void post(Runnable task){
+		renderTasks.offer(task);
+		LockSupport.unpark(renderThread);
+	}
+
+	/**
+	 * The render thread: apply every change queued, paint them as one frame
+	 * and show it; sleep when there is nothing to do.
+	 */
+	private void render(){
+		while(rendering) {
+			Runnable task = renderTasks.poll();
+			if(task == null) {
+				LockSupport.park(this);
+				continue;
+			}
+			do {
+				task.run();
+			} while(rendering && (task = renderTasks.poll()) != null);
+			showFrame();
+		}
+	}
+
+	/**
+	 * Render thread: paint what changed since the last frame and hand it to
+	 * the window. In presentation mode the frame is kept for the frame
+	 * interval; the changes queued meanwhile go into the next frame.
+	 */
+	private void showFrame(){
+		for(Map.Entry <Object,java.awt.Rectangle> change : touched.entrySet()) {
+			if(change.getValue() != null) {
+				addDirty(change.getValue());
+			}
+			ShapeDescription now = shapes.get(change.getKey());
+			if(now != null) {
+				addDirty(now.bounds);
+			}
+		}
+		touched.clear();
+		java.awt.Rectangle area = paintShapes();
+		if(area == null || headless) {
+			return;
+		}
+		int right = area.x + area.width;
+		int bottom = area.y + area.height;
+		synchronized(frontLock) {
+			frontGraphic.drawImage(canvasImage, area.x, area.y, right, bottom,
+			                       area.x, area.y, right, bottom, null);
+		}
+		canvas.repaint(area.x, area.y, area.width, area.height);
+		if(presentationMode) {
+			waitForNextFrame();
+		}
+	}
+
+	/**
+	 * Frame clock for presentation mode: keep the frame just shown on screen
+	 * until the next frame tick. Time spent producing the frame counts
+	 * towards the interval, so only the remainder is waited.
+	 */
+	private void waitForNextFrame(){
+		long now = System.nanoTime();
+		if(nextFrameTime > now) {
+			long remaining = nextFrameTime - now;
+			try{
+				Thread.sleep(remaining / 1000000, (int)(remaining % 1000000));
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			SimulatorMetrics.slept(remaining);
+			now = nextFrameTime;
+		}
+		nextFrameTime = now + frameInterval;
+	}
+
+	/**
+	 * Add an area to the part of the canvas that has to be painted again.
+	 */
+	private void addDirty(Rectangle2D area){
+		if(dirty == null) {
+			dirty = new Rectangle2D.Double(area.getX(), area.getY(),
+			                               area.getWidth(), area.getHeight());
+		} else {
+			dirty.add(area);
+		}
+	}
+
+	/**
+	 * Paint the dirty area into the off-screen image: the background and
+	 * the shapes that intersect it. (Does not repaint.)
+	 * The shapes are painted whole into the scratch image and only the dirty
+	 * area is copied, because a clipped outline is not always rasterized
+	 * with the same pixels as the whole outline.
+	 * @return the area painted, or null if nothing changed
+	 */
+	private java.awt.Rectangle paintShapes(){
+		pendingRedraw = false;
+		if(dirty == null) {
+			return null;
+		}
+		Viewport view = paintedViewport;
+		java.awt.Rectangle area = view.toScreen(dirty, width, height);
+		dirty = null;
+		if(area.isEmpty()) {
+			return null;
+		}
+		long start = SimulatorMetrics.start();
+		int painted = 0;
+		erase(area);
+		// shapes outside the area are skipped: the cost depends on what is
+		// shown, not on how big the world is
+		Rectangle2D worldArea = view.toWorld(area);
+		AffineTransform identity = scratchGraphic.getTransform();
+		scratchGraphic.scale(view.zoom, view.zoom);
+		scratchGraphic.translate(-view.x, -view.y);
+		for(ShapeDescription shape : shapes.values()) {
+			if(shape.bounds.intersects(worldArea.getX(), worldArea.getY(),
+			                           worldArea.getWidth(), worldArea.getHeight())) {
+				shape.draw(scratchGraphic, worldArea);
+				painted++;
+			}
+		}
+		scratchGraphic.setTransform(identity);
+		int right = area.x + area.width;
+		int bottom = area.y + area.height;
+		graphic.drawImage(scratchImage, area.x, area.y, right, bottom,
+		                  area.x, area.y, right, bottom, null);
+		SimulatorMetrics.frame(start, painted);
+		return area;
     }
        
     /**
-     * Erase the whole canvas. (Does not repaint.)
+     * Erase an area of the scratch image. (Does not repaint.)
      */
-    private void erase(){
-        Color original = graphic.getColor();
-        graphic.setColor(backgroundColour);
-        Dimension size = canvas.getSize();
-        graphic.fill(new java.awt.Rectangle(0, 0, size.width, size.height));
-        graphic.setColor(original);
+    private void erase(java.awt.Rectangle area){
+        scratchGraphic.setColor(backgroundColour);
+        scratchGraphic.fill(area);
     }
 
 
@@ -176,10 +894,93 @@ public class Canvas{
      */
     private class CanvasPane extends JPanel{
         public void paint(Graphics g){
-            g.drawImage(canvasImage, 0, 0, null);
+            if(renderThread == null) {
+                paintImage(g, canvasImage);
+            } else {
+                // the render thread is not halfway through this one
+                synchronized(frontLock) {
+                    paintImage(g, frontImage);
+                }
+            }
+        }
+
+        private void paintImage(Graphics g, Image image){
+            // only the area asked for by repaint is copied
+            java.awt.Rectangle clip = g.getClipBounds();
+            if(clip == null) {
+                g.drawImage(image, 0, 0, null);
+            } else {
+                g.drawImage(image, clip.x, clip.y, clip.x + clip.width, clip.y + clip.height,
+                            clip.x, clip.y, clip.x + clip.width, clip.y + clip.height, null);
+            }
         }
     }
     
+    /************************************************************************
+     * Inner class Viewport - the part of the world shown on the canvas: the
+     * world point (x, y) is shown at the top left corner, scaled by zoom.
+     * A viewport never changes, so it can be handed to the render thread.
+     */
+    private static class Viewport{
+        private final double x;
+        private final double y;
+        private final double zoom;
+
+        public Viewport(double x, double y, double zoom){
+            this.x = x;
+            this.y = y;
+            this.zoom = zoom;
+        }
+
+        public double toScreenX(double worldX){
+            return (worldX - x) * zoom;
+        }
+
+        public double toScreenY(double worldY){
+            return (worldY - y) * zoom;
+        }
+
+        public double toWorldX(double screenX){
+            return screenX / zoom + x;
+        }
+
+        public double toWorldY(double screenY){
+            return screenY / zoom + y;
+        }
+
+        /**
+         * Convert a world area to the canvas pixels that show it, limited
+         * to a canvas of width x height.
+         */
+        public java.awt.Rectangle toScreen(Rectangle2D area, int width, int height){
+            // when scaled the outline can reach half a world unit further
+            int grow = zoom == 1 ? 0 : 1;
+            int x0 = clamp(Math.floor(toScreenX(area.getX() - grow)), width);
+            int y0 = clamp(Math.floor(toScreenY(area.getY() - grow)), height);
+            int x1 = clamp(Math.ceil(toScreenX(area.getMaxX() + grow)), width);
+            int y1 = clamp(Math.ceil(toScreenY(area.getMaxY() + grow)), height);
+            return new java.awt.Rectangle(x0, y0, x1 - x0, y1 - y0);
+        }
+
+        /**
+         * Convert canvas pixels to the world area they show, rounded outwards.
+         */
+        public Rectangle2D toWorld(java.awt.Rectangle area){
+            double x0 = Math.floor(toWorldX(area.x));
+            double y0 = Math.floor(toWorldY(area.y));
+            double x1 = Math.ceil(toWorldX((double)area.x + area.width));
+            double y1 = Math.ceil(toWorldY((double)area.y + area.height));
+            return new Rectangle2D.Double(x0, y0, x1 - x0, y1 - y0);
+        }
+
+        /**
+         * Limit a canvas coordinate to 0..size.
+         */
+        private static int clamp(double value, int size){
+            return (int)Math.max(0, Math.min(size, value));
+        }
+    }
+
     /************************************************************************
      * Inner class CanvasPane - the actual canvas component contained in the
      * Canvas frame. This is essentially a JPanel with added capability to
@@ -187,15 +988,31 @@ public class Canvas{
      */
     private class ShapeDescription{
     	private Shape shape;
-    	private String colorString;
+    	private Color color;
+    	private java.awt.Rectangle bounds;  // pixels touched, the outline adds one pixel
+    	private Painter painter;  // paints instead of the shape when it is not null
 
-		public ShapeDescription(Shape shape, String color){
+		public ShapeDescription(Shape shape, Color color){
     		this.shape = shape;
-    		colorString = color;
+    		this.color = color;
+    		this.bounds = shape.getBounds();
+    		this.bounds.width++;
+    		this.bounds.height++;
+    	}
+
+		public ShapeDescription(java.awt.Rectangle bounds, Color color, Painter painter){
+    		this.shape = bounds;
+    		this.color = color;
+    		this.bounds = new java.awt.Rectangle(bounds);
+    		this.painter = painter;
     	}
 
-		public void draw(Graphics2D graphic){
-			setForegroundColor(colorString);
+		public void draw(Graphics2D graphic, Rectangle2D area){
+			graphic.setColor(color);
+			if(painter != null) {
+				painter.paint(graphic, area);
+				return;
+			}
 			graphic.draw(shape);
 			graphic.fill(shape);
 		}
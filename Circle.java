@@ -8,7 +8,7 @@ import java.awt.geom.*;
  * @version 1.0.  (15 July 2000) 
  */
 
-public class Circle{
+public class Circle implements Animator.Movable{
 
     public static final double PI=3.1416;
     
@@ -46,7 +46,6 @@ public class Circle{
             canvas.draw(this, color, 
                 new Ellipse2D.Double(xPosition, yPosition, 
                 diameter, diameter));
-            canvas.wait(10);
         }
     }
 
@@ -90,7 +89,6 @@ public class Circle{
      * @param distance the desired distance in pixels
      */
     public void moveHorizontal(int distance){
-        erase();
         xPosition += distance;
         draw();
     }
@@ -100,49 +98,34 @@ public class Circle{
      * @param distance the desired distance in pixels
      */
     public void moveVertical(int distance){
-        erase();
         yPosition += distance;
         draw();
     }
 
+    /**
+     * Tell if the circle is drawn on the canvas.
+     * @return true if the circle is visible
+     */
+    public boolean isVisible(){
+        return isVisible;
+    }
+
     /**
      * Slowly move the circle horizontally.
+     * The move is animated over time by the Animator.
      * @param distance the desired distance in pixels
      */
     public void slowMoveHorizontal(int distance){
-        int delta;
-
-        if(distance < 0) {
-            delta = -1;
-            distance = -distance;
-        } else {
-            delta = 1;
-        }
-
-        for(int i = 0; i < distance; i++){
-            xPosition += delta;
-            draw();
-        }
+        Animator.slowMove(this, xPosition, yPosition, xPosition + distance, yPosition);
     }
 
     /**
-     * Slowly move the circle vertically
+     * Slowly move the circle vertically.
+     * The move is animated over time by the Animator.
      * @param distance the desired distance in pixels
      */
     public void slowMoveVertical(int distance){
-        int delta;
-
-        if(distance < 0) {
-            delta = -1;
-            distance = -distance;
-        }else {
-            delta = 1;
-        }
-
-        for(int i = 0; i < distance; i++){
-            yPosition += delta;
-            draw();
-        }
+        Animator.slowMove(this, xPosition, yPosition, xPosition, yPosition + distance);
     }
 
     /**
@@ -150,11 +133,34 @@ public class Circle{
      * @param newDiameter the new size (in pixels). Size must be >=0.
      */
     public void changeSize(int newDiameter){
-        erase();
         diameter = newDiameter;
         draw();
     }
 
+    /**
+     * Move the circle to a position and change its size at once.
+     * Unlike the move methods, the position is absolute and the canvas is
+     * updated only once.
+     * @param x the new x coordinate (left side)
+     * @param y the new y coordinate (top side)
+     * @param newDiameter the new size (in pixels). Size must be >=0.
+     */
+    public void setBounds(int x, int y, int newDiameter){
+        xPosition = x;
+        yPosition = y;
+        diameter = newDiameter;
+        draw();
+    }
+
+    /**
+     * Move the circle to an absolute position with a single canvas update.
+     * @param x the new x coordinate (left side)
+     * @param y the new y coordinate (top side)
+     */
+    public void setPosition(int x, int y){
+        setBounds(x, y, diameter);
+    }
+
     /**
      * Change the color. 
      * @param color the new color. Valid colors are "red", "yellow", "blue", "green",
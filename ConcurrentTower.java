@@ -0,0 +1,245 @@
+import java.util.Arrays;
+
+/**
+ * ConcurrentTower - A Tower that can be shared by several threads.
+ *
+ * The operations that change the tower are serialized: they run one at a
+ * time on the wrapped Tower. After every change an immutable Snapshot of
+ * the tower (height, lidded cups, stack order) is published through a
+ * volatile field, so any number of threads can read it without locks and
+ * without ever waiting for a writer. A snapshot always shows the tower
+ * between two operations, never in the middle of one.
+ *
+ * The stack order of a snapshot is kept in chunks of CHUNK items, and a
+ * new snapshot shares with the one before every chunk below the lowest
+ * index the operation changed. Pushing or popping at the top copies one
+ * chunk and the references to the chunks, n / CHUNK of them, instead of
+ * the n items; removing or inserting at index k copies the chunks from k
+ * up, which costs about as much as the change on the Tower itself. The
+ * number of lids is not bounded, so n can be in the millions.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class ConcurrentTower {
+    //Items per chunk of the stack order of the snapshots
+    public static final int CHUNK = 64;
+    private static final int CHUNK_BITS = 6;
+
+    private final Tower tower;
+    private volatile Snapshot current;
+
+    /**
+     * Constructor
+     *
+     * @param width The width of the tower in cm
+     * @param maxHeight The maximum height of the tower in cm
+     */
+    public ConcurrentTower(int width, long maxHeight) {
+        this.tower = new Tower(width, maxHeight);
+        this.current = new Snapshot(tower, 0, null, tower.takeChangedFrom());
+    }
+
+    /**
+     * Returns the state of the tower after the last operation, never blocks
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Returns the current height of the tower, never blocks
+     */
+    public long height() {
+        return current.height();
+    }
+
+    /**
+     * Returns the stack order of the tower, never blocks
+     * @return +id for a cup and -id for a lid, from bottom to top
+     */
+    public int[] getStackOrder() {
+        return current.getStackOrder();
+    }
+
+    /**
+     * Pushes a cup, see Tower.pushCup
+     * @return true if the cup was pushed
+     */
+    public synchronized boolean pushCup(int i) {
+        tower.pushCup(i);
+        return publish();
+    }
+
+    /**
+     * Pushes a lid, see Tower.pushLid
+     * @return true if the lid was pushed
+     */
+    public synchronized boolean pushLid(int i) {
+        tower.pushLid(i);
+        return publish();
+    }
+
+    /**
+     * Pops the top cup, see Tower.popCup
+     * @return true if a cup was popped
+     */
+    public synchronized boolean popCup() {
+        tower.popCup();
+        return publish();
+    }
+
+    /**
+     * Pops the top lid, see Tower.popLid
+     * @return true if a lid was popped
+     */
+    public synchronized boolean popLid() {
+        tower.popLid();
+        return publish();
+    }
+
+    /**
+     * Removes a cup, see Tower.removeCup
+     * @return true if the cup was removed
+     */
+    public synchronized boolean removeCup(int i) {
+        tower.removeCup(i);
+        return publish();
+    }
+
+    /**
+     * Removes a lid, see Tower.removeLid
+     * @return true if the lid was removed
+     */
+    public synchronized boolean removeLid(int i) {
+        tower.removeLid(i);
+        return publish();
+    }
+
+    /**
+     * Replaces the items of the tower, see Tower.load
+     * @return true if the order was loaded
+     */
+    public synchronized boolean load(int[] order) {
+        tower.load(order);
+        return publish();
+    }
+
+    /**
+     * Undoes the last operation, see Tower.undo
+     * @return true if there was an operation to undo
+     */
+    public synchronized boolean undo() {
+        tower.undo();
+        return publish();
+    }
+
+    /**
+     * Redoes the last operation undone, see Tower.redo
+     * @return true if there was an operation to redo
+     */
+    public synchronized boolean redo() {
+        tower.redo();
+        return publish();
+    }
+
+    /**
+     * Makes the tower visible; it is drawn by the thread that changes it
+     */
+    public synchronized void makeVisible() {
+        tower.makeVisible();
+    }
+
+    /**
+     * Makes the tower invisible
+     */
+    public synchronized void makeInvisible() {
+        tower.makeInvisible();
+    }
+
+    //Private auxiliary methods
+    /**
+     * Publishes the state after an operation if it changed the tower, only
+     * called holding the lock. A load that fails changes the tower too.
+     * @return The result of the operation
+     */
+    private boolean publish() {
+        int changedFrom = tower.takeChangedFrom();
+        if (changedFrom != Integer.MAX_VALUE) {
+            current = new Snapshot(tower, current.version + 1, current, changedFrom);
+        }
+        return tower.ok();
+    }
+
+    /**
+     * Immutable state of the tower between two operations
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final long height;
+        private final int liddedCups;
+        private final int items;
+        private final int[][] chunks; //never changed once published
+
+        /**
+         * Takes the state of the tower, sharing the chunks of the previous
+         * snapshot below changedFrom
+         */
+        private Snapshot(Tower tower, long version, Snapshot previous, int changedFrom) {
+            this.version = version;
+            this.height = tower.height();
+            this.liddedCups = tower.liddedCups();
+            this.items = tower.items();
+            int chunkCount = (items + CHUNK - 1) >> CHUNK_BITS;
+            int first = previous == null ? 0 : Math.min(changedFrom, previous.items) >> CHUNK_BITS;
+            this.chunks = previous == null ? new int[chunkCount][] : Arrays.copyOf(previous.chunks, chunkCount);
+            for (int c = first; c < chunkCount; c++) {
+                int start = c << CHUNK_BITS;
+                chunks[c] = new int[Math.min(CHUNK, items - start)];
+                tower.copyStackOrder(start, chunks[c], 0, chunks[c].length);
+            }
+        }
+
+        /**
+         * Returns the number of changes made to the tower before this snapshot
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public long height() {
+            return height;
+        }
+
+        public int liddedCups() {
+            return liddedCups;
+        }
+
+        public int items() {
+            return items;
+        }
+
+        /**
+         * Returns the item at an index, O(1)
+         * @param k The index, 0 is the bottom
+         * @return +id for a cup and -id for a lid
+         */
+        public int itemAt(int k) {
+            if (k < 0 || k >= items) {
+                throw new IndexOutOfBoundsException("Index " + k + ", items " + items);
+            }
+            return chunks[k >> CHUNK_BITS][k & (CHUNK - 1)];
+        }
+
+        /**
+         * Returns a copy of the stack order, +id for a cup and -id for a lid
+         */
+        public int[] getStackOrder() {
+            int[] order = new int[items];
+            for (int c = 0; c < chunks.length; c++) {
+                System.arraycopy(chunks[c], 0, order, c << CHUNK_BITS, chunks[c].length);
+            }
+            return order;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ConcurrentTowerTest - Checks ConcurrentTower with one and many threads.
+ *
+ * With one thread every operation is also applied to a plain Tower and the
+ * snapshot must match it, so the chunks shared between snapshots are
+ * checked after removals and insertions at any index. With many threads
+ * writers change the tower while readers check every snapshot they see:
+ * versions never go back, and the height and lidded cups of a snapshot
+ * are those of its own stack order loaded into a new Tower. After the run
+ * no change may be lost.
+ *
+ * Usage: java ConcurrentTowerTest [operations] [seed]
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class ConcurrentTowerTest {
+    private static final int WIDTH = 400;
+    private static final long MAX_HEIGHT = 5000;
+
+    private AtomicLong checks = new AtomicLong();
+
+    /**
+     * Runs every check, a failed check stops with an AssertionError
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        ConcurrentTowerTest test = new ConcurrentTowerTest();
+        test.snapshotsMatchTower(operations, seed);
+        for (int threads = 2; threads <= 8; threads *= 2) {
+            test.stress(threads, threads, operations / threads, seed + threads);
+        }
+        System.out.println("ConcurrentTowerTest: " + test.checks.get() + " checks passed");
+    }
+
+    /**
+     * Applies the same random operations to a ConcurrentTower and a Tower
+     */
+    public void snapshotsMatchTower(int operations, long seed) {
+        Random random = new Random(seed);
+        ConcurrentTower shared = new ConcurrentTower(WIDTH, MAX_HEIGHT);
+        Tower tower = new Tower(WIDTH, MAX_HEIGHT);
+        int[] lids = new int[300];
+        for (int i = 0; i < lids.length; i++) {
+            lids[i] = -(i + 1);
+        }
+        check(shared.load(lids), "load of 300 lids");
+        tower.load(lids);
+        long version = shared.snapshot().getVersion();
+        for (int step = 0; step < operations; step++) {
+            int operation = random.nextInt(9);
+            int id = 1 + random.nextInt(12);
+            int lid = 1 + random.nextInt(200);
+            boolean done = apply(shared, operation, id, lid);
+            check(apply(tower, operation, id, lid) == done, "step " + step + ": result of operation " + operation);
+            ConcurrentTower.Snapshot snapshot = shared.snapshot();
+            String where = "step " + step;
+            check(Arrays.equals(snapshot.getStackOrder(), tower.getStackOrder()), where + ": stack order");
+            check(snapshot.height() == tower.height() && snapshot.liddedCups() == tower.liddedCups()
+                  && snapshot.items() == tower.items(), where + ": height, lidded cups and items");
+            check(snapshot.getVersion() == version + (done ? 1 : 0), where + ": version");
+            version = snapshot.getVersion();
+            if (snapshot.items() > 0) {
+                int k = random.nextInt(snapshot.items());
+                check(snapshot.itemAt(k) == tower.getStackOrder()[k], where + ": itemAt " + k);
+            }
+        }
+    }
+
+    /**
+     * Writers change the tower while readers check the snapshots
+     * @param writers The number of threads that change the tower
+     * @param readers The number of threads that read snapshots
+     * @param operations The operations of each writer
+     */
+    public void stress(int writers, int readers, int operations, long seed) throws InterruptedException {
+        ConcurrentTower shared = new ConcurrentTower(WIDTH, MAX_HEIGHT);
+        AtomicLong changes = new AtomicLong();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[writers + readers];
+        for (int t = 0; t < writers; t++) {
+            Random random = new Random(seed * 31 + t);
+            threads[t] = new Thread(() -> {
+                await(start);
+                for (int step = 0; step < operations; step++) {
+                    if (randomOperation(shared, random)) {
+                        changes.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (int t = writers; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                await(start);
+                long version = -1;
+                do {
+                    ConcurrentTower.Snapshot snapshot = shared.snapshot();
+                    check(snapshot.getVersion() >= version, "version went back from " + version);
+                    version = snapshot.getVersion();
+                    checkConsistent(snapshot);
+                } while (writing.get());
+            });
+        }
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((where, e) -> failure.compareAndSet(null, e));
+            thread.start();
+        }
+        start.countDown();
+        for (int t = 0; t < writers; t++) {
+            threads[t].join();
+        }
+        writing.set(false);
+        for (int t = writers; t < threads.length; t++) {
+            threads[t].join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(writers + " writers and " + readers + " readers", failure.get());
+        }
+        ConcurrentTower.Snapshot last = shared.snapshot();
+        check(last.getVersion() == changes.get(), "every change published, " + last.getVersion()
+              + " versions for " + changes.get() + " changes");
+        checkConsistent(last);
+    }
+
+    //Private auxiliary methods
+    /**
+     * Applies a random operation
+     * @return true if it changed the tower
+     */
+    private static boolean randomOperation(ConcurrentTower shared, Random random) {
+        return apply(shared, random.nextInt(9), 1 + random.nextInt(12), 1 + random.nextInt(200));
+    }
+
+    /**
+     * Applies an operation to a ConcurrentTower
+     * @param operation From 0 to 8, the lids are pushed twice as often
+     * @return true if it changed the tower
+     */
+    private static boolean apply(ConcurrentTower shared, int operation, int id, int lid) {
+        switch (operation) {
+            case 0: return shared.pushCup(id);
+            case 1:
+            case 2: return shared.pushLid(lid);
+            case 3: return shared.popCup();
+            case 4: return shared.popLid();
+            case 5: return shared.removeCup(id);
+            case 6: return shared.removeLid(lid);
+            case 7: return shared.undo();
+            default: return shared.redo();
+        }
+    }
+
+    /**
+     * Applies the same operation to a Tower
+     * @return true if it changed the tower
+     */
+    private static boolean apply(Tower tower, int operation, int id, int lid) {
+        switch (operation) {
+            case 0: tower.pushCup(id); break;
+            case 1:
+            case 2: tower.pushLid(lid); break;
+            case 3: tower.popCup(); break;
+            case 4: tower.popLid(); break;
+            case 5: tower.removeCup(id); break;
+            case 6: tower.removeLid(lid); break;
+            case 7: tower.undo(); break;
+            default: tower.redo(); break;
+        }
+        return tower.ok();
+    }
+
+    /**
+     * Loads the stack order of a snapshot into a new Tower and compares it
+     */
+    private void checkConsistent(ConcurrentTower.Snapshot snapshot) {
+        int[] order = snapshot.getStackOrder();
+        Tower tower = new Tower(WIDTH, MAX_HEIGHT);
+        tower.load(order);
+        check(tower.ok() && tower.items() == snapshot.items(), "version " + snapshot.getVersion() + " loads");
+        check(tower.height() == snapshot.height(), "version " + snapshot.getVersion() + ": height "
+              + snapshot.height() + " instead of " + tower.height());
+        check(tower.liddedCups() == snapshot.liddedCups(), "version " + snapshot.getVersion() + ": lidded cups");
+    }
+
+    /**
+     * Waits for the start of a run
+     */
+    private static void await(CountDownLatch start) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Counts a check and fails if it does not hold
+     */
+    private void check(boolean condition, String message) {
+        checks.incrementAndGet();
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
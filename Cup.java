@@ -1,3 +1,4 @@
+import java.math.BigInteger;
 
 /**
  * Cup - Represents a cup in the stacking tower.
@@ -7,14 +8,22 @@
  * @version (1.0)
  */
 public class Cup {
+    //Biggest id whose height 2^(id-1) fits in a long
+    public static final int MAX_LONG_ID = 63;
+    
+    //Named colors for the first cups, the rest of the palette is generated
+    private static final String[] BASE_COLORS = {"blue", "red", "green", "yellow", "magenta", "cyan", "orange"};
+    private static final String[] PALETTE = createPalette(64);
+    
     // instance variables - replace the example below with your own
-    private int idNumC;
-    private int height;
-    private String color;
+    private ItemStyle style; //id, height and color, shared by all the cups with this id
     private int xPosition;
     private int yPosition;
     private boolean isVisible;
     private Lid pairedLid;
+    //Only exist while the cup is visible: the sprite, or the rectangles
+    //when sprites are off or the cup is too tall for one
+    private ItemSprite sprite;
     private Rectangle bodyRectangle;
     private Rectangle baseRectangle;
     
@@ -24,24 +33,14 @@ public class Cup {
      * @param idNumC
      */
     public Cup(int idNumC){
-        this.idNumC = idNumC;
-        this.height = calculateHeight(idNumC);
-        this.color = getColorForId(idNumC);
+        this.style = ItemStyle.forCup(idNumC);
         this.xPosition = 0;
         this.yPosition = 0;
         this.isVisible = false;
         this.pairedLid = null;
-        
-        //Initialize body rectangle (cup without base)
-        //The body height is total height minus 1cm of the base
-        this.bodyRectangle = new Rectangle();
-        this.bodyRectangle.changeColor(this.color);
-        this.bodyRectangle.changeSize((this.height - 1)*10, 30);
-        
-        //Initialize base rectangle (1 cm thick base)
-        this.baseRectangle = new Rectangle();
-        this.baseRectangle.changeColor(this.color);
-        this.baseRectangle.changeSize(10, 30); // 1cm = 10 píxeles    
+        this.sprite = null;
+        this.bodyRectangle = null;
+        this.baseRectangle = null;
     }
     
     //Public methods
@@ -50,15 +49,15 @@ public class Cup {
      * @return The cup idNumC
      */
     public int getId() {
-        return idNumC;
+        return style.getId();
     }
     
     /**
      * Returns the cup's height
      * @return The height in cm
      */
-    public int getHeight() {
-        return height;
+    public long getHeight() {
+        return style.getHeight();
     }
     
     /**
@@ -66,7 +65,7 @@ public class Cup {
      * @return The color as a String
      */
     public String getColor() {
-        return color;
+        return style.getColor();
     }
     
     /**
@@ -76,37 +75,27 @@ public class Cup {
      * @param y The y coordinate (bottom of cup)
      */
     public void setPosition(int x, int y) {
-        erase();
-        
         this.xPosition = x;
         this.yPosition = y; // yPosition is the bottom of the cup
-        
-        //Calculate positions for both rectangles
-        //Y=0 is at the top and increases going down
-        //Base position: sits at yPosition
-        int baseX = xPosition;
-        int baseY = yPosition;
-        
-        //Body position: sits above the base. Y is smaller
-        int bodyX = xPosition;
-        int bodyY = yPosition - ((height - 1)*10); //Body starts (height-1) above base
-        
-        //Move rectangles to calculated positions
-        //moveHorizontal and moveVertical are relative to default position (70, 15)
-        baseRectangle.moveHorizontal(baseX - 70);
-        baseRectangle.moveVertical(baseY - 15);
-        
-        bodyRectangle.moveHorizontal(bodyX - 70);
-        bodyRectangle.moveVertical(bodyY - 15);
-        
-        draw();
+        if (isVisible) {
+            //Both rectangles are shown in a single repaint
+            Canvas canvas = Canvas.getCanvas();
+            canvas.beginBatch();
+            try {
+                layoutRectangles();
+            } finally {
+                canvas.commit();
+            }
+        }
     }
     
     /**
      * Draws the cup on the canvas
      */
     public void draw() {
-        if (isVisible) {
+        if (isVisible && sprite != null) {
+            sprite.makeVisible();
+        } else if (isVisible) {
             bodyRectangle.makeVisible();
             baseRectangle.makeVisible();
         }
@@ -116,28 +105,65 @@ public class Cup {
      * Erases the cup from the canvas
      */
     public void erase() {
-        if (isVisible) {
+        if (isVisible && sprite != null) {
+            sprite.makeInvisible();
+        } else if (isVisible) {
             bodyRectangle.makeInvisible();
             baseRectangle.makeInvisible();
         }
     }
     
     /**
-     * Makes the cup visible
+     * Makes the cup visible, creating its rectangles
      */
     public void makeVisible() {
+        if (this.isVisible) {
+            return;
+        }
         this.isVisible = true;
-        bodyRectangle.makeVisible();
-        baseRectangle.makeVisible();
+        java.awt.image.BufferedImage image = SpriteCache.isEnabled() ? SpriteCache.getShared().get(style) : null;
+        if (image != null) {
+            sprite = new ItemSprite(image, style.getColor());
+            layoutRectangles();
+            sprite.makeVisible();
+            return;
+        }
+        //Body rectangle (cup without base) and base rectangle (1 cm thick)
+        bodyRectangle = new Rectangle();
+        bodyRectangle.changeColor(style.getColor());
+        baseRectangle = new Rectangle();
+        baseRectangle.changeColor(style.getColor());
+        layoutRectangles();
+        Canvas canvas = Canvas.getCanvas();
+        canvas.beginBatch();
+        try {
+            bodyRectangle.makeVisible();
+            baseRectangle.makeVisible();
+        } finally {
+            canvas.commit();
+        }
     }
     
     /**
-     * Makes the cup invisible
+     * Makes the cup invisible and releases its rectangles
      */
     public void makeInvisible() {
+        if (this.isVisible && sprite != null) {
+            sprite.makeInvisible();
+            sprite = null;
+        } else if (this.isVisible) {
+            Canvas canvas = Canvas.getCanvas();
+            canvas.beginBatch();
+            try {
+                bodyRectangle.makeInvisible();
+                baseRectangle.makeInvisible();
+            } finally {
+                canvas.commit();
+            }
+            bodyRectangle = null;
+            baseRectangle = null;
+        }
         this.isVisible = false;
-        bodyRectangle.makeInvisible();
-        baseRectangle.makeInvisible();
     }
     
     /**
@@ -151,7 +177,7 @@ public class Cup {
         //Avoid infinite recursion by checking if already paired
         if (this.pairedLid != lid) {
             this.pairedLid = lid;
-            //lid.pairWith(this); //quitar el comentario en minicilco4 //Bidirectional pairing
+            lid.pairWith(this); //Bidirectional pairing
         }
     }
     
@@ -162,7 +188,7 @@ public class Cup {
         if (this.pairedLid != null) {
             Lid tempLid = this.pairedLid;
             this.pairedLid = null;
-            // tempLid.unpair(); //quitar comentario en miniciclo4 //Bidirectional unpairing
+            tempLid.unpair(); //Bidirectional unpairing
         }
     }
     
@@ -183,25 +209,89 @@ public class Cup {
     }
     
     //Private auxiliary methods
+    /**
+     * Places the sprite, or both rectangles, at the cup position with absolute bounds
+     * Y=0 is at the top and increases going down
+     */
+    private void layoutRectangles() {
+        int bodyHeight = style.getHeightPixels() - 10;
+        if (sprite != null) {
+            //The sprite covers the body and the base
+            sprite.setPosition(xPosition, yPosition - bodyHeight);
+            return;
+        }
+        //Base position: sits at yPosition (1cm = 10 pixels)
+        baseRectangle.setBounds(xPosition, yPosition, ItemStyle.WIDTH_PIXELS, 10);
+        //Body position: sits above the base. Y is smaller
+        bodyRectangle.setBounds(xPosition, yPosition - bodyHeight, ItemStyle.WIDTH_PIXELS, bodyHeight);
+    }
+    
     /**
      * Calculates the height of a cup based on its id
      * Height formula: 2^(idNumC-1)
      * Examples: idNumC=1 → 2^0=1, idNumC=2 → 2^1=2, idNumC=3 → 2^2=4, idNumC=4 → 2^3=8
+     * Uses a shift, so it is exact up to MAX_LONG_ID
      * @param idNumC The cup identifier
      * @return The calculated height
+     * @throws ArithmeticException if the height does not fit in a long
+     */
+    public static long calculateHeight(int id) {
+        if (id < 1 || id > MAX_LONG_ID) {
+            throw new ArithmeticException("Height of cup " + id + " does not fit in a long");
+        }
+        return 1L << (id - 1);
+    }
+    
+    /**
+     * Calculates the exact height of a cup for any id (arbitrary precision),
+     * for the ids above MAX_LONG_ID that calculateHeight refuses
+     * @param idNumC The cup identifier, must be >= 1
+     * @return The height 2^(idNumC-1)
+     * @throws IllegalArgumentException if the id is not positive
      */
-    private int calculateHeight(int id) {
-        return (int) Math.pow(2, id - 1);
+    public static BigInteger calculateExactHeight(int id) {
+        if (id < 1) {
+            throw new IllegalArgumentException("Cup " + id + " does not exist");
+        }
+        return BigInteger.ONE.shiftLeft(id - 1);
     }
     
     /**
      * Assigns a unique color based on the cup's id
-     * Colors cycle through the array if there are many cups
+     * The first ids use the precomputed palette, bigger ids get a generated color
      * @param idNumC The cup identifier
      * @return The color as a String
      */
-    private String getColorForId(int idNumC) {
-        String[] colors = {"blue", "red", "green", "yellow", "magenta", "cyan", "orange"};
-        return colors[(idNumC - 1) % colors.length];
+    public static String getColorForId(int idNumC) {
+        if (idNumC >= 1 && idNumC <= PALETTE.length) {
+            return PALETTE[idNumC - 1];
+        }
+        return generateColor(idNumC);
+    }
+    
+    /**
+     * Builds the palette: the named colors followed by generated ones
+     * @param size The number of colors in the palette
+     * @return The palette
+     */
+    private static String[] createPalette(int size) {
+        String[] palette = new String[size];
+        for (int i = 0; i < size; i++) {
+            palette[i] = i < BASE_COLORS.length ? BASE_COLORS[i] : generateColor(i + 1);
+        }
+        return palette;
+    }
+    
+    /**
+     * Generates a hex color for an id, spreading the hues with the golden ratio
+     * so that consecutive cups get clearly different colors
+     * @param idNumC The cup identifier
+     * @return The color as a hex String ("#rrggbb")
+     */
+    private static String generateColor(int idNumC) {
+        float hue = (float) ((idNumC * 0.6180339887) % 1.0);
+        float brightness = idNumC % 2 == 0 ? 0.75f : 0.95f;
+        int rgb = java.awt.Color.HSBtoRGB(hue, 0.8f, brightness) & 0xffffff;
+        return String.format("#%06x", rgb);
     }
 }
\ No newline at end of file
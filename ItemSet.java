@@ -0,0 +1,136 @@
+/**
+ * ItemSet - The items (+id for a cup, -id for a lid) that are in a tower.
+ *
+ * An open addressing hash set of ints with linear probing. Its memory
+ * depends on how many items it holds, not on how big their ids are: lid
+ * numbers are not bounded, and a bit set indexed by id would take 256 MB
+ * for a single lid numbered Integer.MAX_VALUE. Every operation is O(1) on
+ * average. 0 is never an item, so it marks the empty slots.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class ItemSet {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] slots;
+    private int size;
+
+    /**
+     * Constructor
+     */
+    public ItemSet() {
+        this.slots = new int[MIN_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Checks if an item is in the set
+     * @param item +id for a cup, -id for a lid
+     */
+    public boolean contains(int item) {
+        if (item == 0) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        for (int i = slotOf(item, mask); slots[i] != 0; i = (i + 1) & mask) {
+            if (slots[i] == item) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds an item
+     * @param item +id for a cup, -id for a lid, not 0
+     * @return true if the item was not in the set
+     */
+    public boolean add(int item) {
+        if (item == 0) {
+            throw new IllegalArgumentException("0 is not an item");
+        }
+        if (2 * (size + 1) > slots.length) {
+            resize(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        int i = slotOf(item, mask);
+        while (slots[i] != 0) {
+            if (slots[i] == item) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = item;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes an item
+     * @param item +id for a cup, -id for a lid
+     * @return true if the item was in the set
+     */
+    public boolean remove(int item) {
+        if (item == 0) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        int i = slotOf(item, mask);
+        while (slots[i] != item) {
+            if (slots[i] == 0) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        //Moves back the items after the hole that would not be found past it
+        int hole = i;
+        for (int j = (hole + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+            int home = slotOf(slots[j], mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                slots[hole] = slots[j];
+                hole = j;
+            }
+        }
+        slots[hole] = 0;
+        size--;
+        if (slots.length > MIN_CAPACITY && 8 * size < slots.length) {
+            resize(slots.length / 2);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of items in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    //Private auxiliary methods
+    /**
+     * Returns the first slot where an item is looked for
+     */
+    private static int slotOf(int item, int mask) {
+        int hash = item * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Moves every item to a table of another capacity
+     */
+    private void resize(int capacity) {
+        int[] old = slots;
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int item : old) {
+            if (item != 0) {
+                int i = slotOf(item, mask);
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = item;
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * ItemSprite - A cup or lid drawn on the canvas by copying its sprite.
+ *
+ * It is the single drawing of a visible cup or lid when sprites are on,
+ * in place of its rectangles. The sprite comes from SpriteCache.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class ItemSprite implements Canvas.Painter {
+    private BufferedImage sprite;
+    private String color;
+    private int xPosition;
+    private int yPosition;
+    private boolean isVisible;
+
+    /**
+     * Constructor
+     * @param sprite The image to copy
+     * @param color The color of the item
+     */
+    public ItemSprite(BufferedImage sprite, String color) {
+        this.sprite = sprite;
+        this.color = color;
+        this.isVisible = false;
+    }
+
+    /**
+     * Moves the top left corner of the sprite to a position
+     */
+    public void setPosition(int x, int y) {
+        xPosition = x;
+        yPosition = y;
+        draw();
+    }
+
+    /**
+     * Makes the sprite visible
+     */
+    public void makeVisible() {
+        isVisible = true;
+        draw();
+    }
+
+    /**
+     * Makes the sprite invisible
+     */
+    public void makeInvisible() {
+        if (isVisible) {
+            Canvas.getCanvas().erase(this);
+        }
+        isVisible = false;
+    }
+
+    /**
+     * Copies the sprite, called by the canvas
+     */
+    public void paint(Graphics2D graphic, Rectangle2D area) {
+        //Image positions may be floats: move the origin to the sprite first
+        graphic.translate(xPosition, yPosition);
+        graphic.drawImage(sprite, 0, 0, null);
+        graphic.translate(-xPosition, -yPosition);
+    }
+
+    /*
+     * Draws the sprite on the canvas
+     */
+    private void draw() {
+        if (isVisible) {
+            Canvas.getCanvas().draw(this, color,
+                new java.awt.Rectangle(xPosition, yPosition, sprite.getWidth(), sprite.getHeight()), this);
+        }
+    }
+}
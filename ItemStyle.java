@@ -0,0 +1,113 @@
+/**
+ * ItemStyle - Shared look of the cups and lids with the same id.
+ *
+ * Every cup i looks the same (same color, same height), and so does every
+ * lid i, so that state is kept once per id in an ItemStyle and shared by
+ * all the cups or lids with that id. A Cup or Lid only keeps its own
+ * position and pairing; its rectangles exist only while it is visible.
+ *
+ * The styles of cups and of lids up to Cup.MAX_LONG_ID are made once.
+ * Lid numbers are not bounded, so the styles of bigger lids are made when
+ * asked for; two styles with the same id and height are equal, so they
+ * still share one sprite in SpriteCache.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public final class ItemStyle {
+    //Width of every cup and lid in pixels
+    public static final int WIDTH_PIXELS = 30;
+
+    private static final ItemStyle[] CUP_STYLES = new ItemStyle[Cup.MAX_LONG_ID + 1];
+    private static final ItemStyle[] LID_STYLES = new ItemStyle[Cup.MAX_LONG_ID + 1];
+
+    private final int id;
+    private final long height;
+    private final String color;
+    private final int heightPixels;
+
+    private ItemStyle(int id, long height) {
+        this.id = id;
+        this.height = height;
+        this.color = Cup.getColorForId(id);
+        this.heightPixels = toPixels(height);
+    }
+
+    /**
+     * Returns the style of the cups with an id
+     * @param id The cup id, from 1 to Cup.MAX_LONG_ID
+     * @throws ArithmeticException if the height of the cup does not fit in a long
+     */
+    public static ItemStyle forCup(int id) {
+        long height = Cup.calculateHeight(id);
+        ItemStyle style = CUP_STYLES[id];
+        if (style == null) {
+            //Two threads may both create it; either copy is the same
+            style = new ItemStyle(id, height);
+            CUP_STYLES[id] = style;
+        }
+        return style;
+    }
+
+    /**
+     * Returns the style of the lids with a number, lids are 1 cm high
+     * @param id The lid number
+     */
+    public static ItemStyle forLid(int id) {
+        if (id < 0 || id >= LID_STYLES.length) {
+            return new ItemStyle(id, 1);
+        }
+        ItemStyle style = LID_STYLES[id];
+        if (style == null) {
+            style = new ItemStyle(id, 1);
+            LID_STYLES[id] = style;
+        }
+        return style;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the height in cm
+     */
+    public long getHeight() {
+        return height;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    /**
+     * Returns the height in pixels, limited to what the canvas can use
+     */
+    public int getHeightPixels() {
+        return heightPixels;
+    }
+
+    /**
+     * Checks if another style has the same id and height, and so looks the same
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ItemStyle)) {
+            return false;
+        }
+        ItemStyle style = (ItemStyle) other;
+        return id == style.id && height == style.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * id + Long.hashCode(height);
+    }
+
+    /**
+     * Converts cm to pixels (1cm = 10 pixels), limited to what the canvas can use
+     */
+    public static int toPixels(long cm) {
+        return cm > Integer.MAX_VALUE / 10 ? Integer.MAX_VALUE / 10 * 10 : (int) cm * 10;
+    }
+}
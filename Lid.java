@@ -1,19 +1,161 @@
-
 /**
  * Lid class, a lid can be paired with a cup.
  * all lids are 1 cm height
- * 
- * @author (Murillo-Rubiano) 
+ *
+ * @author (Murillo-Rubiano)
  * @version (1.0)
  */
 public class Lid{
-    private int number;
-    private int height;
-    private String color;
+    private ItemStyle style; //number, height and color, shared by all the lids with this number
     private int xPosition;
     private int yPosition;
     private boolean isVisible;
     private Cup pairedCup;
+    //Only exist while the lid is visible: the sprite, or the rectangle when sprites are off
+    private ItemSprite sprite;
     private Rectangle lidRectangle;
-    
-}
\ No newline at end of file
+
+    /**
+     * Constructor
+     * The lid has the same color as the cup with the same number
+     *
+     * @param number
+     */
+    public Lid(int number){
+        this.style = ItemStyle.forLid(number);
+        this.xPosition = 0;
+        this.yPosition = 0;
+        this.isVisible = false;
+        this.pairedCup = null;
+        this.sprite = null;
+        this.lidRectangle = null;
+    }
+
+    //Public methods
+    /**
+     * Returns the lid's number
+     * @return The lid number, the same as the id of its cup
+     */
+    public int getId() {
+        return style.getId();
+    }
+
+    /**
+     * Returns the lid's height
+     * @return The height in cm
+     */
+    public int getHeight() {
+        return (int) style.getHeight();
+    }
+
+    /**
+     * Returns the lid's color
+     * @return The color as a String
+     */
+    public String getColor() {
+        return style.getColor();
+    }
+
+    /**
+     * Sets the position of the lid on the canvas with a single repaint
+     * @param x The x coordinate
+     * @param y The y coordinate (top of the lid)
+     */
+    public void setPosition(int x, int y) {
+        this.xPosition = x;
+        this.yPosition = y;
+        if (isVisible) {
+            layoutRectangle();
+        }
+    }
+
+    /**
+     * Makes the lid visible, creating its rectangle
+     */
+    public void makeVisible() {
+        if (this.isVisible) {
+            return;
+        }
+        this.isVisible = true;
+        java.awt.image.BufferedImage image = SpriteCache.isEnabled() ? SpriteCache.getShared().get(style) : null;
+        if (image != null) {
+            sprite = new ItemSprite(image, style.getColor());
+            layoutRectangle();
+            sprite.makeVisible();
+            return;
+        }
+        lidRectangle = new Rectangle();
+        lidRectangle.changeColor(style.getColor());
+        layoutRectangle();
+        lidRectangle.makeVisible();
+    }
+
+    /**
+     * Makes the lid invisible and releases its rectangle
+     */
+    public void makeInvisible() {
+        if (this.isVisible && sprite != null) {
+            sprite.makeInvisible();
+            sprite = null;
+        } else if (this.isVisible) {
+            lidRectangle.makeInvisible();
+            lidRectangle = null;
+        }
+        this.isVisible = false;
+    }
+
+    /**
+     * Pairs this lid with a cup
+     * @param cup The cup to pair with
+     */
+    public void pairWith(Cup cup) {
+        if (cup == null) {
+            return;
+        }
+        //Avoid infinite recursion by checking if already paired
+        if (this.pairedCup != cup) {
+            this.pairedCup = cup;
+            cup.pairWith(this);
+        }
+    }
+
+    /**
+     * Unpairs this lid from its cup
+     */
+    public void unpair() {
+        if (this.pairedCup != null) {
+            Cup tempCup = this.pairedCup;
+            this.pairedCup = null;
+            tempCup.unpair();
+        }
+    }
+
+    /**
+     * Checks if the lid is on a cup
+     * @return true if the lid has a cup, false otherwise
+     */
+    public boolean isPaired() {
+        return pairedCup != null;
+    }
+
+    /**
+     * Returns the paired cup
+     * @return The paired Cup object, or null if not paired
+     */
+    public Cup getPairedCup() {
+        return pairedCup;
+    }
+
+    //Private auxiliary methods
+    /**
+     * Places the sprite or the rectangle at the lid position with absolute bounds
+     * 1cm = 10 pixels, the lid is as wide as a cup
+     */
+    private void layoutRectangle() {
+        if (sprite != null) {
+            sprite.setPosition(xPosition, yPosition);
+            return;
+        }
+        lidRectangle.setBounds(xPosition, yPosition, ItemStyle.WIDTH_PIXELS, style.getHeightPixels());
+    }
+}
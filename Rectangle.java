@@ -9,7 +9,7 @@ import java.awt.*;
 
 
  
-public class Rectangle{
+public class Rectangle implements Animator.Movable{
 
     public static int EDGES = 4;
     
@@ -82,7 +82,6 @@ public class Rectangle{
      * @param distance the desired distance in pixels
      */
     public void moveHorizontal(int distance){
-        erase();
         xPosition += distance;
         draw();
     }
@@ -92,49 +91,34 @@ public class Rectangle{
      * @param distance the desired distance in pixels
      */
     public void moveVertical(int distance){
-        erase();
         yPosition += distance;
         draw();
     }
 
+    /**
+     * Tell if the rectangle is drawn on the canvas.
+     * @return true if the rectangle is visible
+     */
+    public boolean isVisible(){
+        return isVisible;
+    }
+
     /**
      * Slowly move the rectangle horizontally.
+     * The move is animated over time by the Animator.
      * @param distance the desired distance in pixels
      */
     public void slowMoveHorizontal(int distance){
-        int delta;
-
-        if(distance < 0) {
-            delta = -1;
-            distance = -distance;
-        } else {
-            delta = 1;
-        }
-
-        for(int i = 0; i < distance; i++){
-            xPosition += delta;
-            draw();
-        }
+        Animator.slowMove(this, xPosition, yPosition, xPosition + distance, yPosition);
     }
 
     /**
      * Slowly move the rectangle vertically.
+     * The move is animated over time by the Animator.
      * @param distance the desired distance in pixels
      */
     public void slowMoveVertical(int distance){
-        int delta;
-
-        if(distance < 0) {
-            delta = -1;
-            distance = -distance;
-        } else {
-            delta = 1;
-        }
-
-        for(int i = 0; i < distance; i++){
-            yPosition += delta;
-            draw();
-        }
+        Animator.slowMove(this, xPosition, yPosition, xPosition, yPosition + distance);
     }
 
     /**
@@ -143,16 +127,42 @@ public class Rectangle{
      * @param newWidht the new width in pixels. newWidth must be >=0.
      */
     public void changeSize(int newHeight, int newWidth) {
-        erase();
         height = newHeight;
         width = newWidth;
         draw();
     }
     
+    /**
+     * Move the rectangle to a position and change its size at once.
+     * Unlike the move methods, the position is absolute and the canvas is
+     * updated only once.
+     * @param x the new x coordinate (left side)
+     * @param y the new y coordinate (top side)
+     * @param newWidth the new width in pixels. newWidth must be >=0.
+     * @param newHeight the new height in pixels. newHeight must be >=0.
+     */
+    public void setBounds(int x, int y, int newWidth, int newHeight){
+        xPosition = x;
+        yPosition = y;
+        width = newWidth;
+        height = newHeight;
+        draw();
+    }
+
+    /**
+     * Move the rectangle to an absolute position with a single canvas update.
+     * @param x the new x coordinate (left side)
+     * @param y the new y coordinate (top side)
+     */
+    public void setPosition(int x, int y){
+        setBounds(x, y, width, height);
+    }
+
     /**
      * Change the color. 
      * @param color the new color. Valid colors are "red", "yellow", "blue", "green",
-     * "magenta" and "black".
+     * "magenta", "black", "cyan", "orange", hex strings like "#1e90ff" and
+     * RGB strings like "30,144,255".
      */
     public void changeColor(String newColor){
         color = newColor;
@@ -169,7 +179,6 @@ public class Rectangle{
             canvas.draw(this, color,
                 new java.awt.Rectangle(xPosition, yPosition, 
                                        width, height));
-            canvas.wait(10);
         }
     }
 
@@ -0,0 +1,133 @@
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A vertical ruler that draws its tick marks itself.
+ *
+ * The ruler is a single drawing on the canvas however long it is: when the
+ * canvas paints an area, only the ticks inside that area are drawn. When
+ * the ticks would be too close on the screen (zoomed out) only every 5th,
+ * 10th, 50th... tick is drawn, and the labels are thinned out the same way.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class Ruler implements Canvas.Painter{
+    //Closest distance in screen pixels between two ticks and two labels
+    private static final int MIN_TICK_GAP = 3;
+    private static final int MIN_LABEL_GAP = 30;
+    private static final int SHORT_TICK = 4;
+    private static final int LONG_TICK = 8;
+    private static final float LABEL_SIZE = 9f;
+
+    private int xPosition;
+    private int baseY;
+    private long length;
+    private int unit;
+    private int labelX;
+    private String color;
+    private boolean isVisible;
+
+    /**
+     * Constructor
+     * @param x The x coordinate of the ticks
+     * @param baseY The y coordinate of 0, the ruler grows upwards
+     * @param length The number of units of the ruler
+     * @param unit The pixels of one unit
+     * @param labelX The x coordinate of the labels
+     */
+    public Ruler(int x, int baseY, long length, int unit, int labelX){
+        this.xPosition = x;
+        this.baseY = baseY;
+        this.length = length;
+        this.unit = unit;
+        this.labelX = labelX;
+        this.color = "black";
+        this.isVisible = false;
+    }
+
+    /**
+     * Makes the ruler visible
+     */
+    public void makeVisible(){
+        isVisible = true;
+        draw();
+    }
+
+    /**
+     * Makes the ruler invisible
+     */
+    public void makeInvisible(){
+        if(isVisible) {
+            Canvas.getCanvas().erase(this);
+        }
+        isVisible = false;
+    }
+
+    /**
+     * Paints the ticks and labels inside an area, called by the canvas
+     * @param graphic Where to paint, in world coordinates
+     * @param area The world area being painted
+     */
+    public void paint(Graphics2D graphic, Rectangle2D area){
+        double zoom = Math.abs(graphic.getTransform().getScaleY());
+        long step = decimation(unit * zoom, MIN_TICK_GAP);
+        long labelStep = Math.max(step, decimation(unit * zoom, MIN_LABEL_GAP));
+        //Units inside the area, the area is above baseY
+        long first = Math.max(1, (long)Math.floor((baseY - area.getMaxY()) / unit));
+        long last = Math.min(length, (long)Math.ceil((baseY - area.getY()) / unit) + 1);
+        first = (first + step - 1) / step * step;
+
+        //Labels keep their size on the screen, they must not leave the bounds
+        double labelHalf = LABEL_SIZE / 2 / zoom;
+        java.awt.Rectangle bounds = getBounds();
+        Font original = graphic.getFont();
+        graphic.setFont(original.deriveFont((float)(LABEL_SIZE / zoom)));
+        for(long u = first; u <= last; u += step) {
+            int y = (int)(baseY - u * unit);
+            boolean longTick = u % (5 * step) == 0;
+            //Same pixels as an outlined and filled rectangle of height 1
+            graphic.fillRect(xPosition, y, (longTick ? LONG_TICK : SHORT_TICK) + 1, 2);
+            if(u % labelStep == 0 && y - labelHalf >= bounds.y && y + labelHalf <= bounds.y + bounds.height) {
+                //Text is placed with floats: move the origin to the tick first
+                graphic.translate(0, y);
+                graphic.drawString(Long.toString(u), labelX, (float)labelHalf);
+                graphic.translate(0, -y);
+            }
+        }
+        graphic.setFont(original);
+    }
+
+    /**
+     * Returns the smallest step in 1, 5, 10, 50, 100... whose gap on the screen is at least minGap
+     */
+    private static long decimation(double pixelsPerUnit, int minGap){
+        long step = 1;
+        boolean five = true;
+        while(step * pixelsPerUnit < minGap && step < Long.MAX_VALUE / 10) {
+            step = five ? step * 5 : step * 2;
+            five = !five;
+        }
+        return step;
+    }
+
+    /**
+     * Returns the area the ruler paints on: one unit above and below it,
+     * and to the right as far as the labels may go at any zoom
+     */
+    private java.awt.Rectangle getBounds(){
+        long span = Math.min(length, (long)baseY / unit + 1) * unit;
+        return new java.awt.Rectangle(xPosition, (int)(baseY - span) - unit,
+                                      Integer.MAX_VALUE / 4, (int)span + 2 * unit);
+    }
+
+    /*
+     * Draws the ruler on the canvas
+     */
+    private void draw(){
+        if(isVisible) {
+            Canvas.getCanvas().draw(this, color, getBounds(), this);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * SimulatorMetrics - Counters of the Canvas rendering and the Tower operations.
+ *
+ * Canvas reports every redraw (shapes painted and frame time) and the time
+ * it sleeps; Tower reports every push, pop and remove with its latency,
+ * whether it failed (lastOperationOk) and the height after it. The values
+ * can be read with snapshot() or through JMX, where they are published as
+ * "StackingCups:type=SimulatorMetrics".
+ *
+ * Metrics are off unless the system property simulator.metrics is "true"
+ * or setEnabled(true) is called. When they are off every report is a
+ * single check of a flag, so the simulator pays almost nothing.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class SimulatorMetrics implements SimulatorMetricsMBean {
+    /**
+     * System property that turns the metrics on at startup
+     */
+    public static final String ENABLED_PROPERTY = "simulator.metrics";
+
+    public static final int PUSH = 0;
+    public static final int POP = 1;
+    public static final int REMOVE = 2;
+
+    //Frame time histogram: bucket b counts frames of less than 2^b microseconds
+    public static final int HISTOGRAM_BUCKETS = 24;
+
+    private static volatile boolean enabled;
+    private static boolean registered;
+
+    private static final LongAdder redraws = new LongAdder();
+    private static final LongAdder shapesPainted = new LongAdder();
+    private static final LongAdder frameNanos = new LongAdder();
+    private static final LongAccumulator maxFrameNanos = new LongAccumulator(Math::max, 0);
+    private static final AtomicLongArray frameHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private static final LongAdder sleepNanos = new LongAdder();
+
+    private static final LongAdder[] operations = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private static final LongAdder[] operationNanos = {new LongAdder(), new LongAdder(), new LongAdder()};
+    private static final LongAdder failedOperations = new LongAdder();
+    private static volatile long currentHeight;
+
+    static {
+        if (Boolean.getBoolean(ENABLED_PROPERTY)) {
+            setMetricsEnabled(true);
+        }
+    }
+
+    /**
+     * Checks if the metrics are being collected
+     */
+    public static boolean isMetricsEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns the metrics on or off. The first time they are turned on the
+     * MBean is registered in the platform MBean server.
+     * @param on true to collect metrics
+     */
+    public static synchronized void setMetricsEnabled(boolean on) {
+        enabled = on;
+        if (on && !registered) {
+            registered = true;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(new SimulatorMetrics(),
+                                     new ObjectName("StackingCups:type=SimulatorMetrics"));
+            } catch (JMException | SecurityException e) {
+                //JMX is not available, the snapshot API still works
+            }
+        }
+    }
+
+    /**
+     * Returns the time to pass later to a report, or 0 if metrics are off
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Reports a redraw of the canvas
+     * @param start The value returned by start() before painting
+     * @param shapes The number of shapes painted
+     */
+    public static void frame(long start, int shapes) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        redraws.increment();
+        shapesPainted.add(shapes);
+        frameNanos.add(nanos);
+        maxFrameNanos.accumulate(nanos);
+        int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000);
+        frameHistogram.incrementAndGet(Math.min(bucket, HISTOGRAM_BUCKETS - 1));
+    }
+
+    /**
+     * Reports time spent sleeping in the canvas
+     * @param nanos The time slept
+     */
+    public static void slept(long nanos) {
+        if (enabled) {
+            sleepNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Reports an operation of a tower
+     * @param operation PUSH, POP or REMOVE
+     * @param start The value returned by start() before the operation
+     * @param ok The result of the operation (lastOperationOk)
+     * @param height The height of the tower after the operation
+     */
+    public static void towerOperation(int operation, long start, boolean ok, long height) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        operations[operation].increment();
+        operationNanos[operation].add(System.nanoTime() - start);
+        if (!ok) {
+            failedOperations.increment();
+        }
+        currentHeight = height;
+    }
+
+    /**
+     * Returns a copy of the current values
+     */
+    public static Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    /**
+     * Sets every counter to zero
+     */
+    public static void resetMetrics() {
+        redraws.reset();
+        shapesPainted.reset();
+        frameNanos.reset();
+        maxFrameNanos.reset();
+        for (int b = 0; b < HISTOGRAM_BUCKETS; b++) {
+            frameHistogram.set(b, 0);
+        }
+        sleepNanos.reset();
+        for (int k = 0; k < operations.length; k++) {
+            operations[k].reset();
+            operationNanos[k].reset();
+        }
+        failedOperations.reset();
+        currentHeight = 0;
+    }
+
+    //MBean methods
+    public boolean isEnabled() {
+        return isMetricsEnabled();
+    }
+
+    public void setEnabled(boolean on) {
+        setMetricsEnabled(on);
+    }
+
+    public void reset() {
+        resetMetrics();
+    }
+
+    public long getRedraws() {
+        return redraws.sum();
+    }
+
+    public long getShapesPainted() {
+        return shapesPainted.sum();
+    }
+
+    public double getAverageShapesPerFrame() {
+        return snapshot().getAverageShapesPerFrame();
+    }
+
+    public double getAverageFrameMillis() {
+        return snapshot().getAverageFrameMillis();
+    }
+
+    public long getMaxFrameNanos() {
+        return maxFrameNanos.get();
+    }
+
+    public long[] getFrameTimeHistogram() {
+        return snapshot().getFrameTimeHistogram();
+    }
+
+    public long getSleepNanos() {
+        return sleepNanos.sum();
+    }
+
+    public long getPushes() {
+        return operations[PUSH].sum();
+    }
+
+    public long getPops() {
+        return operations[POP].sum();
+    }
+
+    public long getRemoves() {
+        return operations[REMOVE].sum();
+    }
+
+    public long getFailedOperations() {
+        return failedOperations.sum();
+    }
+
+    public double getAveragePushMicros() {
+        return snapshot().getAverageMicros(PUSH);
+    }
+
+    public double getAveragePopMicros() {
+        return snapshot().getAverageMicros(POP);
+    }
+
+    public double getAverageRemoveMicros() {
+        return snapshot().getAverageMicros(REMOVE);
+    }
+
+    public long getCurrentHeight() {
+        return currentHeight;
+    }
+
+    /**
+     * Values of the metrics at one moment
+     */
+    public static final class Snapshot {
+        private final long redrawCount;
+        private final long shapeCount;
+        private final long frameTime;
+        private final long maxFrameTime;
+        private final long[] histogram;
+        private final long sleepTime;
+        private final long[] operationCount;
+        private final long[] operationTime;
+        private final long failed;
+        private final long height;
+
+        private Snapshot() {
+            redrawCount = redraws.sum();
+            shapeCount = shapesPainted.sum();
+            frameTime = frameNanos.sum();
+            maxFrameTime = maxFrameNanos.get();
+            histogram = new long[HISTOGRAM_BUCKETS];
+            for (int b = 0; b < HISTOGRAM_BUCKETS; b++) {
+                histogram[b] = frameHistogram.get(b);
+            }
+            sleepTime = sleepNanos.sum();
+            operationCount = new long[operations.length];
+            operationTime = new long[operations.length];
+            for (int k = 0; k < operations.length; k++) {
+                operationCount[k] = operations[k].sum();
+                operationTime[k] = operationNanos[k].sum();
+            }
+            failed = failedOperations.sum();
+            height = currentHeight;
+        }
+
+        public long getRedraws() {
+            return redrawCount;
+        }
+
+        public long getShapesPainted() {
+            return shapeCount;
+        }
+
+        public double getAverageShapesPerFrame() {
+            return redrawCount == 0 ? 0 : (double) shapeCount / redrawCount;
+        }
+
+        public double getAverageFrameMillis() {
+            return redrawCount == 0 ? 0 : frameTime / 1e6 / redrawCount;
+        }
+
+        public long getMaxFrameNanos() {
+            return maxFrameTime;
+        }
+
+        /**
+         * Returns the frame time histogram, bucket b counts the frames
+         * that took less than 2^b microseconds (and more than the bucket before)
+         */
+        public long[] getFrameTimeHistogram() {
+            return histogram.clone();
+        }
+
+        public long getSleepNanos() {
+            return sleepTime;
+        }
+
+        /**
+         * Returns how many times an operation was done
+         * @param operation PUSH, POP or REMOVE
+         */
+        public long getOperations(int operation) {
+            return operationCount[operation];
+        }
+
+        /**
+         * Returns the average latency of an operation
+         * @param operation PUSH, POP or REMOVE
+         */
+        public double getAverageMicros(int operation) {
+            long count = operationCount[operation];
+            return count == 0 ? 0 : operationTime[operation] / 1e3 / count;
+        }
+
+        public long getFailedOperations() {
+            return failed;
+        }
+
+        public long getCurrentHeight() {
+            return height;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT,
+                "redraws=%d shapes/frame=%.1f frame=%.3fms maxFrame=%.3fms sleep=%.1fms "
+                + "pushes=%d pops=%d removes=%d failed=%d height=%d",
+                redrawCount, getAverageShapesPerFrame(), getAverageFrameMillis(), maxFrameTime / 1e6,
+                sleepTime / 1e6, operationCount[PUSH], operationCount[POP], operationCount[REMOVE],
+                failed, height);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * SimulatorMetricsMBean - Management interface of SimulatorMetrics for JMX.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public interface SimulatorMetricsMBean {
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+    void reset();
+
+    long getRedraws();
+    long getShapesPainted();
+    double getAverageShapesPerFrame();
+    double getAverageFrameMillis();
+    long getMaxFrameNanos();
+    long[] getFrameTimeHistogram();
+    long getSleepNanos();
+
+    long getPushes();
+    long getPops();
+    long getRemoves();
+    long getFailedOperations();
+    double getAveragePushMicros();
+    double getAveragePopMicros();
+    double getAverageRemoveMicros();
+    long getCurrentHeight();
+}
@@ -0,0 +1,280 @@
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SolverCache - Bounded LRU cache of TowerSolver results keyed by (n, h).
+ *
+ * Only a compact form of each solution is kept: one bit per stacked cup and
+ * the number of lids (see TowerSolver.stackedCups), about n/8 bytes instead
+ * of the 4n bytes of the whole order, and never Cup objects. A hit rebuilds
+ * the stacked cups from the bits, and solve expands them into the whole
+ * order with TowerSolver.expand; the arithmetic on h is not done again.
+ * The least recently used entries are evicted when there are more than
+ * maxEntries entries or when the solutions and their keys take more than
+ * maxBytes. Queries without solution are answered directly and are not stored.
+ *
+ * The cache can be shared by several threads.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class SolverCache {
+    //Approximate cost of an entry besides its bits: key, entry and array headers
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private LinkedHashMap<Query, Compact> entries;
+    private int maxEntries;
+    private long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor
+     * @param maxEntries The maximum number of solutions kept
+     * @param maxBytes The maximum memory used by the kept solutions
+     */
+    public SolverCache(int maxEntries, long maxBytes) {
+        this.entries = new LinkedHashMap<Query, Compact>(16, 0.75f, true);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the whole order of a solution, from the cache when possible,
+     * see TowerSolver.solve
+     * @param n The number of cups
+     * @param h The height of the tower in cm
+     * @return +id for a cup and -id for a lid from bottom to top, or null if
+     * there is no solution
+     */
+    public int[] solve(int n, long h) {
+        return TowerSolver.expand(stackedCups(n, h));
+    }
+
+    /**
+     * Returns the whole order of a solution for any n, from the cache when
+     * possible, see TowerSolver.solve
+     * @param n The number of cups
+     * @param h The height of the tower in cm
+     * @return +id for a cup and -id for a lid from bottom to top, or null if
+     * there is no solution
+     */
+    public int[] solve(int n, BigInteger h) {
+        return TowerSolver.expand(stackedCups(n, h));
+    }
+
+    /**
+     * Returns the compact form of a solution, from the cache when possible,
+     * see TowerSolver.stackedCups
+     * @param n The number of cups
+     * @param h The height of the tower in cm
+     * @return The stacked cups and lids, or null if there is no solution
+     */
+    public int[] stackedCups(int n, long h) {
+        if (!TowerSolver.isSolvable(n, h)) {
+            return null;
+        }
+        Query query = new Query(n, h, null);
+        Compact compact = lookup(query);
+        if (compact != null) {
+            return compact.stackedCups();
+        }
+        int[] stacked = TowerSolver.stackedCups(n, h);
+        store(query, new Compact(stacked));
+        return stacked;
+    }
+
+    /**
+     * Returns the compact form of a solution for any n, from the cache when
+     * possible, see TowerSolver.stackedCups
+     * @param n The number of cups
+     * @param h The height of the tower in cm
+     * @return The stacked cups and lids, or null if there is no solution
+     */
+    public int[] stackedCups(int n, BigInteger h) {
+        if (!TowerSolver.isSolvable(n, h)) {
+            return null;
+        }
+        Query query = h.bitLength() < 64 ? new Query(n, h.longValue(), null) : new Query(n, 0, h);
+        Compact compact = lookup(query);
+        if (compact != null) {
+            return compact.stackedCups();
+        }
+        int[] stacked = TowerSolver.stackedCups(n, h);
+        store(query, new Compact(stacked));
+        return stacked;
+    }
+
+    /**
+     * Returns how many queries were answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns how many queries had to be solved
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns how many solutions were evicted
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of solutions kept
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the approximate memory used by the kept solutions and their keys
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Removes every solution, the counters are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    //Private auxiliary methods
+    /**
+     * Looks a query up and counts the hit or the miss
+     */
+    private synchronized Compact lookup(Query query) {
+        Compact compact = entries.get(query);
+        if (compact == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return compact;
+    }
+
+    /**
+     * Keeps a solution and evicts the least recently used ones over the limits
+     */
+    private synchronized void store(Query query, Compact compact) {
+        long cost = costOf(query, compact);
+        if (cost > maxBytes) {
+            return;
+        }
+        Compact previous = entries.put(query, compact);
+        if (previous != null) {
+            bytes -= costOf(query, previous);
+        }
+        bytes += cost;
+        Iterator<Map.Entry<Query, Compact>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            Map.Entry<Query, Compact> evicted = eldest.next();
+            eldest.remove();
+            bytes -= costOf(evicted.getKey(), evicted.getValue());
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns the approximate memory used by a solution and its key, a
+     * BigInteger h takes about n/8 bytes
+     */
+    private static long costOf(Query query, Compact compact) {
+        long key = query.bigH == null ? 0 : query.bigH.bitLength() / 8;
+        return ENTRY_OVERHEAD + key + 8L * compact.cups.length;
+    }
+
+    /**
+     * Compact form of a solution: bit c-1 is set when cup c is stacked. The
+     * lids are always on the first cups 1..lids, see TowerSolver.stackedCups
+     */
+    private static final class Compact {
+        private final long[] cups;
+        private final int lids;
+
+        Compact(int[] stacked) {
+            int n = 0;
+            int lidCount = 0;
+            for (int item : stacked) {
+                if (item > 0) {
+                    n = item;
+                } else {
+                    lidCount++;
+                }
+            }
+            this.cups = new long[(n + 63) >>> 6];
+            this.lids = lidCount;
+            for (int item : stacked) {
+                if (item > 0) {
+                    cups[(item - 1) >>> 6] |= 1L << (item - 1);
+                }
+            }
+        }
+
+        /**
+         * Rebuilds the stacked cups in ascending order, each one followed by its lid
+         */
+        int[] stackedCups() {
+            int count = lids;
+            for (long word : cups) {
+                count += Long.bitCount(word);
+            }
+            int[] stacked = new int[count];
+            int next = 0;
+            for (int w = 0; w < cups.length; w++) {
+                for (long bits = cups[w]; bits != 0; bits &= bits - 1) {
+                    int cup = (w << 6) + Long.numberOfTrailingZeros(bits) + 1;
+                    stacked[next++] = cup;
+                    if (cup <= lids) {
+                        stacked[next++] = -cup;
+                    }
+                }
+            }
+            return stacked;
+        }
+    }
+
+    /**
+     * Key of the cache: h is kept as a long when it fits, otherwise as a BigInteger
+     */
+    private static final class Query {
+        private final int n;
+        private final long h;
+        private final BigInteger bigH;
+
+        Query(int n, long h, BigInteger bigH) {
+            this.n = n;
+            this.h = h;
+            this.bigH = bigH;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Query)) {
+                return false;
+            }
+            Query query = (Query) other;
+            return n == query.n && h == query.h
+                && (bigH == null ? query.bigH == null : bigH.equals(query.bigH));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 31 * n + Long.hashCode(h);
+            return bigH == null ? hash : 31 * hash + bigH.hashCode();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SpriteCache - Pre-rendered images of the cups and lids.
+ *
+ * A cup or a lid always looks the same for its ItemStyle, so it is painted
+ * once per style (styles are compared with equals) into an image (a
+ * sprite) and the canvas copies that image instead of filling its
+ * rectangles on every redraw. The sprites are kept in a bounded
+ * LRU cache: the least recently used ones are dropped when the cache holds
+ * more than maxPixels pixels. Items taller than MAX_SPRITE_HEIGHT pixels are
+ * not cached and keep being drawn with rectangles.
+ *
+ * Sprites are used unless the system property canvas.sprites is "false"
+ * or setEnabled(false) is called; the change applies to the items made
+ * visible afterwards.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class SpriteCache {
+    /**
+     * System property that turns the sprites off ("false")
+     */
+    public static final String ENABLED_PROPERTY = "canvas.sprites";
+
+    //Tallest sprite, in pixels
+    public static final int MAX_SPRITE_HEIGHT = 2048;
+    private static final long DEFAULT_MAX_PIXELS = 8L << 20;
+
+    private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+    private static final SpriteCache shared = new SpriteCache(DEFAULT_MAX_PIXELS);
+
+    private LinkedHashMap<ItemStyle, BufferedImage> sprites;
+    private long maxPixels;
+    private long pixels;
+    private long evictions;
+
+    /**
+     * Constructor
+     * @param maxPixels The maximum number of pixels kept in sprites
+     */
+    public SpriteCache(long maxPixels) {
+        this.sprites = new LinkedHashMap<ItemStyle, BufferedImage>(16, 0.75f, true);
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * Returns the cache used by cups and lids
+     */
+    public static SpriteCache getShared() {
+        return shared;
+    }
+
+    /**
+     * Checks if cups and lids are drawn with sprites
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns the sprites on or off for the cups and lids made visible afterwards
+     * @param on true to draw with sprites, false to draw with rectangles
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Returns the sprite of a cup or lid style, painting it the first time
+     * @param style The style of the item
+     * @return The sprite, or null if the item is too tall to be cached
+     */
+    public synchronized BufferedImage get(ItemStyle style) {
+        BufferedImage sprite = sprites.get(style);
+        if (sprite == null) {
+            int height = spriteHeight(style);
+            if (height > MAX_SPRITE_HEIGHT) {
+                return null;
+            }
+            sprite = render(style, spriteWidth(), height);
+            sprites.put(style, sprite);
+            pixels += (long) sprite.getWidth() * sprite.getHeight();
+            evict();
+        }
+        return sprite;
+    }
+
+    /**
+     * Returns the number of sprites kept
+     */
+    public synchronized int size() {
+        return sprites.size();
+    }
+
+    /**
+     * Returns the number of pixels kept in sprites
+     */
+    public synchronized long getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Returns how many sprites were dropped to stay under maxPixels
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Removes every sprite
+     */
+    public synchronized void clear() {
+        sprites.clear();
+        pixels = 0;
+    }
+
+    /**
+     * Returns the width of every sprite: a 30 pixel rectangle and its outline
+     */
+    public static int spriteWidth() {
+        return ItemStyle.WIDTH_PIXELS + 1;
+    }
+
+    /**
+     * Returns the height of the sprite of a style: the item and its outline
+     */
+    public static int spriteHeight(ItemStyle style) {
+        return style.getHeightPixels() + 1;
+    }
+
+    //Private auxiliary methods
+    /**
+     * Drops the least recently used sprites over the limit
+     */
+    private void evict() {
+        Iterator<Map.Entry<ItemStyle, BufferedImage>> eldest = sprites.entrySet().iterator();
+        while (pixels > maxPixels && sprites.size() > 1) {
+            BufferedImage sprite = eldest.next().getValue();
+            eldest.remove();
+            pixels -= (long) sprite.getWidth() * sprite.getHeight();
+            evictions++;
+        }
+    }
+
+    /**
+     * Paints a sprite: the same pixels as the outlined and filled rectangles
+     * of the item. Uses an image compatible with the screen when there is one.
+     */
+    private static BufferedImage render(ItemStyle style, int width, int height) {
+        BufferedImage sprite;
+        if (GraphicsEnvironment.isHeadless()) {
+            sprite = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        } else {
+            GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+            sprite = configuration.createCompatibleImage(width, height);
+        }
+        Graphics2D graphic = sprite.createGraphics();
+        Color color = Canvas.getColor(style.getColor());
+        graphic.setColor(color);
+        graphic.fillRect(0, 0, width, height);
+        graphic.dispose();
+        return sprite;
+    }
+}
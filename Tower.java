@@ -1,20 +1,941 @@
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * class Tower, Main controller for the stacking cup simulator.
  * manages the tower structure, cup and lid operations and visualization.
- * 
- * @author (Murillo-Rubiano) 
+ *
+ * The stack is kept in primitive arrays (stackOrder, bottoms, tops...) and
+ * the aggregates (height, lidded cups) are updated on every operation, so
+ * the queries do not rescan the tower. The items in the tower are also kept
+ * in an ItemSet, whose memory depends on the number of items and not on
+ * their ids, since lid numbers are not bounded. Cup and Lid objects only
+ * exist while the tower is visible.
+ *
+ * Pushing and popping at the top only place the item moved. Removing or
+ * inserting an item below the top is O(n - k): every item above it may fall
+ * into a different cup, so each one is placed again.
+ *
+ * Heights are longs, exact for cups up to Cup.MAX_LONG_ID; a tower refuses
+ * wider cups. exactHeight is the opt-in arbitrary precision path: it places
+ * a stack order of cups of any id with BigInteger heights.
+ *
+ * Every change is recorded in a TowerJournal, which gives undo/redo and
+ * lets a session be replayed on another tower without drawing it.
+ *
+ * Nesting rule: cup i and lid i are i units wide. An item narrower than the
+ * cup below it falls inside that cup and rests on its base (1 cm); an item
+ * as wide or wider rests on the top of the items below it. A lid blocks
+ * everything above it.
+ *
+ * @author (Murillo-Rubiano)
  * @version (1.0)
  */
 public class Tower{
+    private static final int SCALE = 10; //1cm = 10 pixels
+    private static final int MARGIN = 10;
+
     private int width;
-    private int maxHeight;
+    private long maxHeight;
     private boolean isVisible;
     private boolean lastOperationOk;
     private ArrayList<Cup> cups;
     private ArrayList<Lid> lids;
-    private ArrayList<Rectangle> heightMarkers;
-    private ArrayList<String> stackOrder;
+    private Ruler heightRuler; //one tick per cm, drawn only where it is seen
     private Rectangle visualFrame;
-}
\ No newline at end of file
+
+    //Stack state, index 0 is the bottom of the tower
+    //stackOrder holds +id for a cup and -id for a lid
+    private int[] stackOrder;
+    private long[] bottoms;  //bottom of each item in cm
+    private long[] tops;     //top of each item in cm
+    private int[] supports;  //index of the nearest wider item below, -1 if none
+    private long[] maxTops;  //tower height up to each item
+    private int size;
+    private int liddedCount;
+    private ItemSet itemsIn;  //the items of stackOrder, to find repeated ones
+    private TowerJournal journal;
+    private boolean replaying; //changes made by the journal are not recorded again
+    private int changedFrom;   //lowest index changed since takeChangedFrom
+
+    /**
+     * Constructor
+     *
+     * @param width The width of the tower in cm
+     * @param maxHeight The maximum height of the tower in cm
+     */
+    public Tower(int width, long maxHeight){
+        this.width = width;
+        this.maxHeight = maxHeight;
+        this.isVisible = false;
+        this.lastOperationOk = true;
+        this.cups = new ArrayList<Cup>();
+        this.lids = new ArrayList<Lid>();
+        this.heightRuler = null;
+        this.visualFrame = null;
+
+        this.stackOrder = new int[16];
+        this.bottoms = new long[16];
+        this.tops = new long[16];
+        this.supports = new int[16];
+        this.maxTops = new long[16];
+        this.size = 0;
+        this.liddedCount = 0;
+        this.itemsIn = new ItemSet();
+        this.journal = new TowerJournal();
+        this.replaying = false;
+        this.changedFrom = 0;
+    }
+
+    //Public methods
+    /**
+     * Adds cup i on top of the tower
+     * @param i The cup id
+     */
+    public void pushCup(int i) {
+        long start = SimulatorMetrics.start();
+        journal.beginOperation();
+        push(i, i);
+        SimulatorMetrics.towerOperation(SimulatorMetrics.PUSH, start, lastOperationOk, height());
+    }
+
+    /**
+     * Adds lid i on top of the tower
+     * @param i The lid number
+     */
+    public void pushLid(int i) {
+        long start = SimulatorMetrics.start();
+        journal.beginOperation();
+        push(-i, i);
+        SimulatorMetrics.towerOperation(SimulatorMetrics.PUSH, start, lastOperationOk, height());
+    }
+
+    /**
+     * Removes the last cup put in the tower
+     */
+    public void popCup() {
+        long start = SimulatorMetrics.start();
+        journal.beginOperation();
+        removeIndex(lastIndexOf(true));
+        SimulatorMetrics.towerOperation(SimulatorMetrics.POP, start, lastOperationOk, height());
+    }
+
+    /**
+     * Removes the last lid put in the tower
+     */
+    public void popLid() {
+        long start = SimulatorMetrics.start();
+        journal.beginOperation();
+        removeIndex(lastIndexOf(false));
+        SimulatorMetrics.towerOperation(SimulatorMetrics.POP, start, lastOperationOk, height());
+    }
+
+    /**
+     * Removes cup i from the tower, the items above it settle down
+     * @param i The cup id
+     */
+    public void removeCup(int i) {
+        long start = SimulatorMetrics.start();
+        journal.beginOperation();
+        removeIndex(indexOf(i));
+        SimulatorMetrics.towerOperation(SimulatorMetrics.REMOVE, start, lastOperationOk, height());
+    }
+
+    /**
+     * Removes lid i from the tower, the items above it settle down
+     * @param i The lid number
+     */
+    public void removeLid(int i) {
+        long start = SimulatorMetrics.start();
+        journal.beginOperation();
+        removeIndex(indexOf(-i));
+        SimulatorMetrics.towerOperation(SimulatorMetrics.REMOVE, start, lastOperationOk, height());
+    }
+
+    /**
+     * Replaces the items of the tower with a stack order, for example one
+     * made by TowerSolver. If some item cannot be pushed the tower is left
+     * empty and the operation fails.
+     * @param order +id for a cup and -id for a lid, from bottom to top
+     */
+    public void load(int[] order) {
+        boolean visible = isVisible;
+        if (visible) {
+            Canvas.getCanvas().beginBatch();
+        }
+        try {
+            journal.beginOperation();
+            clear();
+            boolean loaded = true;
+            for (int k = 0; k < order.length && loaded; k++) {
+                push(order[k], Math.abs(order[k]));
+                loaded = lastOperationOk;
+            }
+            if (!loaded) {
+                clear();
+            }
+            lastOperationOk = loaded;
+        } finally {
+            if (visible) {
+                Canvas.getCanvas().commit();
+            }
+        }
+    }
+
+    /**
+     * Undoes the last operation that changed the tower
+     */
+    public void undo() {
+        int end = journal.size();
+        int first = journal.undo();
+        lastOperationOk = first >= 0;
+        if (lastOperationOk) {
+            applyJournal(first, end, false);
+        }
+    }
+
+    /**
+     * Redoes the last operation undone
+     */
+    public void redo() {
+        int first = journal.size();
+        int end = journal.redo();
+        lastOperationOk = end >= 0;
+        if (lastOperationOk) {
+            applyJournal(first, end, true);
+        }
+    }
+
+    /**
+     * Rebuilds the tower from a journal, for example one read from a file.
+     * The entries are applied to an empty tower of the same size first and
+     * every one is checked: a removal must find its item, an insertion must
+     * be of an item that is not in the tower and every change must keep the
+     * tower inside its maximum height. Only a journal that passes replaces
+     * the tower, so a bad one leaves the tower as it was. Nothing is drawn
+     * while the entries are applied; if the tower is visible its cups and
+     * lids are created once at the end. The journal becomes the journal of
+     * this tower, so its operations can be undone.
+     * @param session The journal to replay
+     * @throws IllegalArgumentException if the journal was trimmed or does not fit this tower
+     */
+    public void replay(TowerJournal session) {
+        if (session.isTrimmed()) {
+            throw new IllegalArgumentException("The journal was trimmed, it does not start from an empty tower");
+        }
+        Tower rebuilt = new Tower(width, maxHeight);
+        rebuilt.replaying = true;
+        for (int entry = 0; entry < session.size(); entry++) {
+            rebuilt.applyChecked(session, entry);
+        }
+        boolean wasVisible = isVisible;
+        makeInvisible();
+        stackOrder = rebuilt.stackOrder;
+        bottoms = rebuilt.bottoms;
+        tops = rebuilt.tops;
+        supports = rebuilt.supports;
+        maxTops = rebuilt.maxTops;
+        size = rebuilt.size;
+        liddedCount = rebuilt.liddedCount;
+        itemsIn = rebuilt.itemsIn;
+        journal = session;
+        changedFrom = 0;
+        lastOperationOk = true;
+        if (wasVisible) {
+            makeVisible();
+        }
+    }
+
+    /**
+     * Returns the journal with the changes made to the tower
+     */
+    public TowerJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Replaces the journal of the tower, for example with one that has a limit.
+     * The changes already made are not in the new journal and cannot be undone.
+     * @param journal The journal that records the next changes
+     */
+    public void setJournal(TowerJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Returns the lowest index changed since the last call, for ConcurrentTower
+     * @return The index, or Integer.MAX_VALUE if nothing changed
+     */
+    int takeChangedFrom() {
+        int from = changedFrom;
+        changedFrom = Integer.MAX_VALUE;
+        return from;
+    }
+
+    /**
+     * Copies part of the stack order, +id for a cup and -id for a lid
+     */
+    void copyStackOrder(int from, int[] destination, int offset, int length) {
+        System.arraycopy(stackOrder, from, destination, offset, length);
+    }
+
+    /**
+     * Returns the size in bytes of the state written by writeState
+     */
+    long stateBytes() {
+        return 4 + 8 + 4 + 4 + 32L * size;
+    }
+
+    /**
+     * Writes the state of the tower for TowerSnapshot, the arrays are copied in bulk
+     */
+    void writeState(ByteBuffer buffer) {
+        buffer.putInt(width);
+        buffer.putLong(maxHeight);
+        buffer.putInt(size);
+        buffer.putInt(liddedCount);
+        TowerSnapshot.putInts(buffer, stackOrder, size);
+        TowerSnapshot.putLongs(buffer, bottoms, size);
+        TowerSnapshot.putLongs(buffer, tops, size);
+        TowerSnapshot.putInts(buffer, supports, size);
+        TowerSnapshot.putLongs(buffer, maxTops, size);
+    }
+
+    /**
+     * Creates an invisible tower from a state written by writeState. The
+     * state is checked like replay checks a journal, see checkState.
+     * @throws IllegalArgumentException if the state is damaged
+     */
+    static Tower readState(ByteBuffer buffer) {
+        Tower tower = new Tower(buffer.getInt(), buffer.getLong());
+        int count = buffer.getInt();
+        //32 bytes per item must be there before anything is allocated for them
+        if (count < 0 || 32L * count + 4 > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad number of items " + count + " for "
+                                               + buffer.remaining() + " bytes");
+        }
+        int capacity = Math.max(16, count);
+        tower.liddedCount = buffer.getInt();
+        tower.stackOrder = TowerSnapshot.getInts(buffer, count, capacity);
+        tower.bottoms = TowerSnapshot.getLongs(buffer, count, capacity);
+        tower.tops = TowerSnapshot.getLongs(buffer, count, capacity);
+        tower.supports = TowerSnapshot.getInts(buffer, count, capacity);
+        tower.maxTops = TowerSnapshot.getLongs(buffer, count, capacity);
+        tower.size = count;
+        tower.checkState();
+        return tower;
+    }
+
+    /**
+     * Returns the current height of the tower, O(1)
+     * @return The height in cm
+     */
+    public long height() {
+        return size == 0 ? 0 : maxTops[size - 1];
+    }
+
+    /**
+     * Computes the exact height of a stack order for cups of any id, with
+     * the same nesting rule as a tower but BigInteger heights, O(n) amortized.
+     * For example to check an order of TowerSolver.solve(n, BigInteger).
+     * @param order +id for a cup and -id for a lid from bottom to top, like load
+     * @return The height in cm
+     * @throws IllegalArgumentException if an item is 0 or repeated
+     */
+    public static BigInteger exactHeight(int[] order) {
+        int[] supports = new int[order.length];
+        BigInteger[] bottoms = new BigInteger[order.length];
+        BigInteger[] tops = new BigInteger[order.length];
+        ItemSet seen = new ItemSet();
+        BigInteger height = BigInteger.ZERO;
+        for (int k = 0; k < order.length; k++) {
+            int item = order[k];
+            if (item == 0 || item == Integer.MIN_VALUE || !seen.add(item)) {
+                throw new IllegalArgumentException("Bad or repeated item " + item + " at " + k);
+            }
+            //The chain of supports like supportFor, and the tops on it like bottomFor
+            int width = Math.abs(item);
+            BigInteger bottom = BigInteger.ZERO;
+            int j = k - 1;
+            while (j >= 0 && Math.abs(order[j]) <= width) {
+                bottom = bottom.max(tops[j]);
+                j = supports[j];
+            }
+            if (j >= 0) {
+                bottom = bottom.max(order[j] > 0 ? bottoms[j].add(BigInteger.ONE) : tops[j]);
+            }
+            supports[k] = j;
+            bottoms[k] = bottom;
+            tops[k] = bottom.add(item > 0 ? Cup.calculateExactHeight(item) : BigInteger.ONE);
+            height = height.max(tops[k]);
+        }
+        return height;
+    }
+
+    /**
+     * Returns how many cups have their lid directly on them, O(1)
+     * @return The number of lidded cups
+     */
+    public int liddedCups() {
+        return liddedCount;
+    }
+
+    /**
+     * Returns the number of items (cups and lids) in the tower
+     * @return The number of items
+     */
+    public int items() {
+        return size;
+    }
+
+    /**
+     * Checks if the tower fits in its maximum height, O(1)
+     * @return true if the height is not greater than maxHeight
+     */
+    public boolean fits() {
+        return height() <= maxHeight;
+    }
+
+    /**
+     * Checks if cup i could be pushed without passing the maximum height
+     * @param i The cup id
+     * @return true if the cup fits on the tower
+     */
+    public boolean fitsCup(int i) {
+        return i >= 1 && !itemsIn.contains(i) && fitsTop(topIfPushed(i));
+    }
+
+    /**
+     * Checks if lid i could be pushed without passing the maximum height
+     * @param i The lid number
+     * @return true if the lid fits on the tower
+     */
+    public boolean fitsLid(int i) {
+        return i >= 1 && !itemsIn.contains(-i) && fitsTop(topIfPushed(-i));
+    }
+
+    /**
+     * Returns the items of the tower from bottom to top
+     * @return pairs {"cup", "i"} or {"lid", "i"}
+     */
+    public String[][] stackingItems() {
+        String[][] items = new String[size][];
+        for (int k = 0; k < size; k++) {
+            int item = stackOrder[k];
+            items[k] = new String[] {item > 0 ? "cup" : "lid", String.valueOf(Math.abs(item))};
+        }
+        return items;
+    }
+
+    /**
+     * Returns the encoded stack order from bottom to top
+     * @return +id for a cup and -id for a lid
+     */
+    public int[] getStackOrder() {
+        return Arrays.copyOf(stackOrder, size);
+    }
+
+    /**
+     * Checks if the last operation could be done
+     * @return true if the last operation was ok
+     */
+    public boolean ok() {
+        return lastOperationOk;
+    }
+
+    /**
+     * Checks if the tower is visible
+     */
+    public boolean isVisible() {
+        return isVisible;
+    }
+
+    /**
+     * Makes the tower visible, creating the cups and lids to show
+     */
+    public void makeVisible() {
+        if (isVisible) {
+            return;
+        }
+        isVisible = true;
+        Canvas canvas = Canvas.getCanvas();
+        canvas.beginBatch();
+        try {
+            createFrame();
+            for (int k = 0; k < size; k++) {
+                addVisual(k);
+            }
+            updateVisuals(0);
+        } finally {
+            canvas.commit();
+        }
+    }
+
+    /**
+     * Makes the tower invisible and releases its cups and lids
+     */
+    public void makeInvisible() {
+        if (!isVisible) {
+            return;
+        }
+        Canvas canvas = Canvas.getCanvas();
+        canvas.beginBatch();
+        try {
+            for (Cup cup : cups) {
+                cup.makeInvisible();
+            }
+            for (Lid lid : lids) {
+                lid.makeInvisible();
+            }
+            heightRuler.makeInvisible();
+            visualFrame.makeInvisible();
+        } finally {
+            canvas.commit();
+        }
+        cups.clear();
+        lids.clear();
+        heightRuler = null;
+        visualFrame = null;
+        isVisible = false;
+    }
+
+    //Private auxiliary methods
+    /**
+     * Removes every item of the tower
+     */
+    private void clear() {
+        while (size > 0) {
+            removeAt(size - 1);
+        }
+    }
+
+    /**
+     * Puts an item on top of the tower if it is new and fits
+     * @param item +id for a cup, -id for a lid
+     * @param id The id of the item
+     */
+    private void push(int item, int id) {
+        if (id < 1 || itemsIn.contains(item) || !fitsTop(topIfPushed(item))) {
+            lastOperationOk = false;
+            return;
+        }
+        insertAt(size, item);
+        lastOperationOk = true;
+    }
+
+    /**
+     * Inserts an item at index k, the items above it are placed again, O(size - k)
+     * @param k The index of the item
+     * @param item +id for a cup, -id for a lid
+     */
+    private void insertAt(int k, int item) {
+        if (k < size && isLiddedAt(k)) {
+            liddedCount--;
+        }
+        ensureCapacity(size + 1);
+        changedFrom = Math.min(changedFrom, k);
+        System.arraycopy(stackOrder, k, stackOrder, k + 1, size - k);
+        stackOrder[k] = item;
+        size++;
+        for (int j = k; j < size; j++) {
+            place(j, stackOrder[j]);
+        }
+        itemsIn.add(item);
+        if (isLiddedAt(k)) {
+            liddedCount++;
+        }
+        if (k + 1 < size && isLiddedAt(k + 1)) {
+            liddedCount++;
+        }
+        if (!replaying) {
+            journal.inserted(item, k);
+        }
+        if (isVisible) {
+            Canvas canvas = Canvas.getCanvas();
+            canvas.beginBatch();
+            try {
+                addVisual(k);
+                updateVisuals(k);
+            } finally {
+                canvas.commit();
+            }
+        }
+    }
+
+    /**
+     * Applies the journal entries between first and end without recording them
+     * @param forward true to apply them again (redo), false to revert them backwards (undo)
+     */
+    private void applyJournal(int first, int end, boolean forward) {
+        if (isVisible) {
+            Canvas.getCanvas().beginBatch();
+        }
+        replaying = true;
+        try {
+            for (int e = first; e < end; e++) {
+                int entry = forward ? e : end - 1 - (e - first);
+                if (journal.isRemovalAt(entry) == forward) {
+                    removeAt(journal.indexAt(entry));
+                } else {
+                    insertAt(journal.indexAt(entry), journal.itemAt(entry));
+                }
+            }
+        } finally {
+            replaying = false;
+            if (isVisible) {
+                Canvas.getCanvas().commit();
+            }
+        }
+    }
+
+    /**
+     * Checks a state read by readState from the bottom up: every item must
+     * be valid and new, and its support, bottom, top and the height up to it
+     * must be what the nesting rule gives on the items below. Fills itemsIn.
+     * @throws IllegalArgumentException at the first item that does not agree
+     */
+    private void checkState() {
+        int lidded = 0;
+        for (int k = 0; k < size; k++) {
+            int item = stackOrder[k];
+            if (item == 0 || item == Integer.MIN_VALUE || item > Cup.MAX_LONG_ID || !itemsIn.add(item)) {
+                throw new IllegalArgumentException("Bad or repeated item " + item + " at " + k);
+            }
+            int support = supportFor(k, Math.abs(item));
+            long bottom = bottomFor(k, Math.abs(item), support);
+            long top = bottom + heightOf(item);
+            long height = k == 0 ? top : Math.max(maxTops[k - 1], top);
+            if (top < bottom || supports[k] != support || bottoms[k] != bottom || tops[k] != top
+                || maxTops[k] != height) {
+                throw new IllegalArgumentException("Item " + item + " at " + k + " is not where it would land");
+            }
+            if (isLiddedAt(k)) {
+                lidded++;
+            }
+        }
+        if (lidded != liddedCount) {
+            throw new IllegalArgumentException(liddedCount + " lidded cups stored, " + lidded + " in the stack");
+        }
+        if (!fits()) {
+            throw new IllegalArgumentException("The height " + height() + " passes the maximum " + maxHeight);
+        }
+    }
+
+    /**
+     * Applies a journal entry forwards after checking that it fits the tower
+     * @throws IllegalArgumentException if the entry cannot be applied
+     */
+    private void applyChecked(TowerJournal session, int entry) {
+        int k = session.indexAt(entry);
+        int item = session.itemAt(entry);
+        if (session.isRemovalAt(entry)) {
+            if (k >= size || stackOrder[k] != item) {
+                throw new IllegalArgumentException("Journal entry " + entry + " removes " + item
+                                                   + " at " + k + ", which is not there");
+            }
+            removeAt(k);
+        } else {
+            int id = Math.abs(item);
+            if (k > size || id < 1 || item > Cup.MAX_LONG_ID || itemsIn.contains(item)) {
+                throw new IllegalArgumentException("Journal entry " + entry + " cannot insert " + item + " at " + k);
+            }
+            insertAt(k, item);
+        }
+        for (int j = Math.min(k, size); j < size; j++) {
+            if (tops[j] < bottoms[j]) {
+                throw new IllegalArgumentException("Journal entry " + entry + " makes the tower overflow a long");
+            }
+        }
+        if (!fits()) {
+            throw new IllegalArgumentException("Journal entry " + entry + " passes the maximum height " + maxHeight);
+        }
+    }
+
+    /**
+     * Computes where an item lands on top of the first k items and stores it at k.
+     * The items below do not change, so re-placing after a removal is safe.
+     * @param k The index of the item
+     * @param item +id for a cup, -id for a lid
+     */
+    private void place(int k, int item) {
+        int support = supportFor(k, Math.abs(item));
+        long bottom = bottomFor(k, Math.abs(item), support);
+        stackOrder[k] = item;
+        bottoms[k] = bottom;
+        tops[k] = bottom + heightOf(item);
+        supports[k] = support;
+        maxTops[k] = k == 0 ? tops[k] : Math.max(maxTops[k - 1], tops[k]);
+    }
+
+    /**
+     * Computes the top of an item if it were pushed, without pushing it
+     * @param item +id for a cup, -id for a lid
+     * @return The top of the item in cm, or -1 if it overflows a long
+     */
+    private long topIfPushed(int item) {
+        int itemWidth = Math.abs(item);
+        if (item > Cup.MAX_LONG_ID) {
+            return -1;
+        }
+        long bottom = bottomFor(size, itemWidth, supportFor(size, itemWidth));
+        long top = bottom + heightOf(item);
+        return top < bottom ? -1 : top;
+    }
+
+    /**
+     * Checks if a top computed by topIfPushed is inside the maximum height
+     */
+    private boolean fitsTop(long top) {
+        return top >= 0 && top <= maxHeight;
+    }
+
+    /**
+     * Finds the nearest item below index k that is wider than the given width.
+     * Only the chain of supports has to be followed: an item that is covered
+     * by a wider one can never be the highest obstacle again.
+     * @return The index of that item, or -1 if there is none
+     */
+    private int supportFor(int k, int itemWidth) {
+        int j = k - 1;
+        while (j >= 0 && Math.abs(stackOrder[j]) <= itemWidth) {
+            j = supports[j];
+        }
+        return j;
+    }
+
+    /**
+     * Computes the bottom of an item put on top of the first k items
+     * @param support The nearest wider item, from supportFor
+     * @return The bottom in cm
+     */
+    private long bottomFor(int k, int itemWidth, int support) {
+        long bottom = 0;
+        int j = k - 1;
+        while (j != support) {
+            bottom = Math.max(bottom, tops[j]);
+            j = supports[j];
+        }
+        if (support >= 0) {
+            //Inside a wider cup it rests on its base, a wider lid blocks it
+            long onSupport = stackOrder[support] > 0 ? bottoms[support] + 1 : tops[support];
+            bottom = Math.max(bottom, onSupport);
+        }
+        return bottom;
+    }
+
+    /**
+     * Removes the item at index k if there is one
+     * @param k The index of the item, -1 makes the operation fail
+     */
+    private void removeIndex(int k) {
+        lastOperationOk = k >= 0;
+        if (lastOperationOk) {
+            removeAt(k);
+        }
+    }
+
+    /**
+     * Removes the item at index k, the items above it are placed again, O(size - k)
+     * @param k The index of the item
+     */
+    private void removeAt(int k) {
+        int item = stackOrder[k];
+        if (isLiddedAt(k)) {
+            liddedCount--;
+        }
+        if (k + 1 < size && isLiddedAt(k + 1)) {
+            liddedCount--;
+        }
+        itemsIn.remove(item);
+        changedFrom = Math.min(changedFrom, k);
+        if (!replaying) {
+            journal.removed(item, k);
+        }
+        boolean visible = isVisible;
+        if (visible) {
+            Canvas.getCanvas().beginBatch();
+        }
+        try {
+            if (visible) {
+                removeVisual(k);
+            }
+            System.arraycopy(stackOrder, k + 1, stackOrder, k, size - k - 1);
+            size--;
+            for (int j = k; j < size; j++) {
+                place(j, stackOrder[j]);
+            }
+            if (k < size && isLiddedAt(k)) {
+                liddedCount++;
+            }
+            if (visible) {
+                updateVisuals(k);
+            }
+        } finally {
+            if (visible) {
+                Canvas.getCanvas().commit();
+            }
+        }
+    }
+
+    /**
+     * Checks if the item at index k is a lid sitting on its own cup
+     */
+    private boolean isLiddedAt(int k) {
+        return k > 0 && stackOrder[k] < 0 && stackOrder[k - 1] == -stackOrder[k];
+    }
+
+    /**
+     * Finds the last index of an item
+     * @return The index, or -1 if it is not in the tower
+     */
+    private int indexOf(int item) {
+        for (int k = size - 1; k >= 0; k--) {
+            if (stackOrder[k] == item) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the index of the last cup or the last lid
+     * @param cup true to look for a cup, false for a lid
+     * @return The index, or -1 if there is none
+     */
+    private int lastIndexOf(boolean cup) {
+        for (int k = size - 1; k >= 0; k--) {
+            if ((stackOrder[k] > 0) == cup) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the height of an item in cm
+     * @param item +id for a cup, -id for a lid
+     */
+    private long heightOf(int item) {
+        return item > 0 ? Cup.calculateHeight(item) : 1;
+    }
+
+    /**
+     * Grows the arrays of the stack when needed
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > stackOrder.length) {
+            int newLength = Math.max(capacity, stackOrder.length * 2);
+            stackOrder = Arrays.copyOf(stackOrder, newLength);
+            bottoms = Arrays.copyOf(bottoms, newLength);
+            tops = Arrays.copyOf(tops, newLength);
+            supports = Arrays.copyOf(supports, newLength);
+            maxTops = Arrays.copyOf(maxTops, newLength);
+        }
+    }
+
+    //Visual methods, only used while the tower is visible
+    /**
+     * Creates the frame of the tower and its height ruler
+     */
+    private void createFrame() {
+        int baseY = baseY();
+        visualFrame = new Rectangle();
+        visualFrame.changeColor("black");
+        visualFrame.setBounds(MARGIN, baseY, width*SCALE, 2);
+        visualFrame.makeVisible();
+        heightRuler = new Ruler(0, baseY, maxHeight, SCALE, MARGIN + width*SCALE + 4);
+        heightRuler.makeVisible();
+    }
+
+    /**
+     * Creates the cup or lid object of the item at index k and adds it to
+     * its list in stack order
+     */
+    private void addVisual(int k) {
+        int item = stackOrder[k];
+        if (item > 0) {
+            Cup cup = new Cup(item);
+            cup.makeVisible();
+            cups.add(countBefore(k, true), cup);
+        } else {
+            Lid lid = new Lid(-item);
+            lid.makeVisible();
+            lids.add(countBefore(k, false), lid);
+        }
+    }
+
+    /**
+     * Takes the cup or lid object of the item at index k out of its list
+     * and hides it
+     */
+    private void removeVisual(int k) {
+        if (stackOrder[k] > 0) {
+            Cup cup = cups.remove(countBefore(k, true));
+            cup.unpair();
+            cup.makeInvisible();
+        } else {
+            Lid lid = lids.remove(countBefore(k, false));
+            lid.unpair();
+            lid.makeInvisible();
+        }
+    }
+
+    /**
+     * Moves the cups and lids from index k up to their place and pairs
+     * every lid that sits on its own cup
+     */
+    private void updateVisuals(int k) {
+        int cupIndex = countBefore(k, true);
+        int lidIndex = k - cupIndex;
+        int x = MARGIN + (width*SCALE - 30)/2;
+        Cup below = null;
+        if (k > 0 && stackOrder[k - 1] > 0) {
+            below = cups.get(cupIndex - 1);
+        }
+        for (int j = k; j < size; j++) {
+            int y = baseY() - toPixels(bottoms[j]) - SCALE;
+            if (stackOrder[j] > 0) {
+                below = cups.get(cupIndex++);
+                below.setPosition(x, y);
+            } else {
+                Lid lid = lids.get(lidIndex++);
+                lid.setPosition(x, y);
+                if (isLiddedAt(j)) {
+                    lid.pairWith(below);
+                } else {
+                    lid.unpair();
+                }
+                below = null;
+            }
+        }
+    }
+
+    /**
+     * Counts the cups (or the lids) before index k
+     */
+    private int countBefore(int k, boolean cup) {
+        int count = 0;
+        for (int j = 0; j < k; j++) {
+            if ((stackOrder[j] > 0) == cup) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the y coordinate of the floor of the tower on the canvas
+     */
+    private int baseY() {
+        return MARGIN + toPixels(maxHeight);
+    }
+
+    /**
+     * Converts cm to pixels, limited to what the canvas can use
+     */
+    private static int toPixels(long cm) {
+        return cm > Integer.MAX_VALUE / SCALE / 2 ? Integer.MAX_VALUE / 2 : (int) cm * SCALE;
+    }
+}
@@ -0,0 +1,295 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * TowerJournal - Append-only record of the changes made to a Tower.
+ *
+ * Every change is stored as two ints: the item (+id for a cup, -id for a
+ * lid) and a code with the index where it was inserted or removed. A tower
+ * operation that changes several items (for example load) is kept as a
+ * group, so undo and redo always work on whole operations.
+ *
+ * Undo and redo only move a cursor over the entries; doing a new operation
+ * after undoing drops the entries that could have been redone.
+ *
+ * By default a journal keeps every entry, so a whole session can be
+ * written and replayed however long it is. A caller that needs less
+ * memory can give a limit: past it the oldest operations are dropped, so
+ * undo goes back a bounded number of steps. A trimmed journal no longer
+ * starts from an empty tower, so it cannot be written or replayed. A
+ * journal with a limit of 0 records nothing.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class TowerJournal {
+    private static final int MAGIC = 0x544A524E; //"TJRN"
+    private static final int VERSION = 1;
+
+    private static final int REMOVED = 1;  //the item was removed, otherwise inserted
+    private static final int CHAINED = 2;  //same operation as the entry before
+
+    private int[] items;
+    private int[] codes;
+    private int size;       //entries recorded
+    private int position;   //entries applied, the rest can be redone
+    private boolean operationStarted;
+    private int limit;
+    private boolean trimmed; //the oldest operations were dropped
+
+    /**
+     * Constructor, keeps every entry
+     */
+    public TowerJournal() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor
+     * @param limit The maximum number of entries kept, 0 records nothing
+     * and Integer.MAX_VALUE keeps the whole session
+     */
+    public TowerJournal(int limit) {
+        this.items = new int[Math.min(64, Math.max(limit, 1))];
+        this.codes = new int[items.length];
+        this.size = 0;
+        this.position = 0;
+        this.operationStarted = false;
+        this.limit = Math.max(limit, 0);
+        this.trimmed = false;
+    }
+
+    /**
+     * Returns the number of entries that are applied
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * Checks if there is an operation to undo
+     */
+    public boolean canUndo() {
+        return position > 0;
+    }
+
+    /**
+     * Checks if there is an operation to redo
+     */
+    public boolean canRedo() {
+        return position < size;
+    }
+
+    /**
+     * Checks if the oldest operations were dropped to stay under the limit
+     * @return true if the journal does not start from an empty tower
+     */
+    public boolean isTrimmed() {
+        return trimmed;
+    }
+
+    /**
+     * Returns the maximum number of entries kept
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Removes every entry
+     */
+    public void clear() {
+        size = 0;
+        position = 0;
+        trimmed = false;
+    }
+
+    /**
+     * Writes the applied entries in a compact binary form
+     * @param out Where the entries are written
+     * @throws IOException if the stream cannot be written
+     * @throws IllegalStateException if the journal was trimmed
+     */
+    public void write(OutputStream out) throws IOException {
+        if (trimmed) {
+            throw new IllegalStateException("The journal was trimmed, it does not start from an empty tower");
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(position);
+        for (int i = 0; i < position; i++) {
+            data.writeInt(items[i]);
+            data.writeInt(codes[i]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads entries written with write. Every entry is checked on its own
+     * (item, operation code); Tower.replay checks that they fit the tower.
+     * @param in Where the entries are read from
+     * @return The journal read, without limit
+     * @throws IOException if the stream cannot be read or is not a valid journal
+     */
+    public static TowerJournal read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a tower journal");
+        }
+        int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("Bad number of journal entries: " + count);
+        }
+        TowerJournal journal = new TowerJournal();
+        for (int i = 0; i < count; i++) {
+            int item = data.readInt();
+            int code = data.readInt();
+            if (item == 0 || item == Integer.MIN_VALUE || item > Cup.MAX_LONG_ID) {
+                throw new IOException("Bad item in journal entry " + i + ": " + item);
+            }
+            if (code < 0 || (i == 0 && (code & CHAINED) != 0)) {
+                throw new IOException("Bad operation in journal entry " + i + ": " + code);
+            }
+            //The arrays grow as entries arrive, a wrong count cannot allocate them all
+            journal.ensureCapacity(i + 1);
+            journal.items[i] = item;
+            journal.codes[i] = code;
+        }
+        journal.size = count;
+        journal.position = count;
+        return journal;
+    }
+
+    //Methods used by Tower
+    /**
+     * Marks the start of a tower operation, the next entries form one group
+     */
+    void beginOperation() {
+        operationStarted = true;
+    }
+
+    /**
+     * Records that an item was inserted at index k
+     */
+    void inserted(int item, int k) {
+        record(item, k << 2);
+    }
+
+    /**
+     * Records that an item was removed from index k
+     */
+    void removed(int item, int k) {
+        record(item, (k << 2) | REMOVED);
+    }
+
+    /**
+     * Returns the item of an entry
+     */
+    int itemAt(int entry) {
+        return items[entry];
+    }
+
+    /**
+     * Returns the tower index of an entry
+     */
+    int indexAt(int entry) {
+        return codes[entry] >>> 2;
+    }
+
+    /**
+     * Checks if an entry is a removal (otherwise it is an insertion)
+     */
+    boolean isRemovalAt(int entry) {
+        return (codes[entry] & REMOVED) != 0;
+    }
+
+    /**
+     * Moves the cursor back over a whole operation
+     * @return The first entry of the operation undone, or -1 if there is none.
+     * The entries from there up to the old cursor have to be undone backwards.
+     */
+    int undo() {
+        if (position == 0) {
+            return -1;
+        }
+        do {
+            position--;
+        } while (position > 0 && (codes[position] & CHAINED) != 0);
+        return position;
+    }
+
+    /**
+     * Moves the cursor forward over a whole operation
+     * @return The entry after the operation redone, or -1 if there is none.
+     * The entries from the old cursor up to there have to be applied again.
+     */
+    int redo() {
+        if (position == size) {
+            return -1;
+        }
+        do {
+            position++;
+        } while (position < size && (codes[position] & CHAINED) != 0);
+        return position;
+    }
+
+    //Private auxiliary methods
+    /**
+     * Appends an entry, dropping the entries that could have been redone
+     */
+    private void record(int item, int code) {
+        if (limit == 0) {
+            return;
+        }
+        if (!operationStarted) {
+            code |= CHAINED;
+        }
+        operationStarted = false;
+        size = position;
+        if (size >= limit && (code & CHAINED) == 0) {
+            trim();
+        }
+        ensureCapacity(size + 1);
+        items[size] = item;
+        codes[size] = code;
+        size++;
+        position = size;
+    }
+
+    /**
+     * Drops the oldest whole operations, at least a quarter of the limit
+     * when possible, so that trimming is rare. Called when a new operation
+     * starts; a single operation longer than the limit is kept whole.
+     */
+    private void trim() {
+        int target = Math.max(1, limit / 4);
+        int drop = target;
+        while (drop < size && (codes[drop] & CHAINED) != 0) {
+            drop++;
+        }
+        int remaining = size - drop;
+        System.arraycopy(items, drop, items, 0, remaining);
+        System.arraycopy(codes, drop, codes, 0, remaining);
+        size = remaining;
+        position = remaining;
+        trimmed = true;
+    }
+
+    /**
+     * Grows the arrays when needed
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > items.length) {
+            //Doubles, but not past the limit unless an operation longer than the limit needs it
+            long doubled = Math.min(2L * items.length, Integer.MAX_VALUE);
+            int newLength = (int) Math.max(capacity, capacity <= limit ? Math.min(doubled, limit) : doubled);
+            items = Arrays.copyOf(items, newLength);
+            codes = Arrays.copyOf(codes, newLength);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TowerLoadClient - Load generator for TowerServer.
+ *
+ * Opens many sessions at the same time; every session sends its requests
+ * one by one (push and pop cups, ask the height) and waits for each answer.
+ * At the end it prints the throughput and the latency percentiles of all
+ * the requests. If no port is given a server is started in this JVM.
+ *
+ * Usage: java TowerLoadClient [sessions] [requestsPerSession] [port]
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class TowerLoadClient {
+    private int port;
+    private int sessions;
+    private int requests;
+
+    /**
+     * Constructor
+     * @param port The port of the server
+     * @param sessions The number of sessions open at the same time
+     * @param requests The number of requests of every session
+     */
+    public TowerLoadClient(int port, int sessions, int requests) {
+        this.port = port;
+        this.sessions = sessions;
+        this.requests = requests;
+    }
+
+    /**
+     * Runs a load test
+     */
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        TowerServer server = null;
+        int port;
+        if (args.length > 2) {
+            port = Integer.parseInt(args[2]);
+        } else {
+            server = new TowerServer(0);
+            port = server.getPort();
+        }
+        new TowerLoadClient(port, sessions, requests).run();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Runs every session and prints the results
+     * @return The latency of every request in nanoseconds, sorted
+     */
+    public long[] run() throws Exception {
+        ExecutorService executor = TowerServer.newThreadPerTaskExecutor();
+        long start = System.nanoTime();
+        Future<?>[] results = new Future<?>[sessions];
+        long[][] latencies = new long[sessions][];
+        for (int s = 0; s < sessions; s++) {
+            int session = s;
+            results[s] = executor.submit(() -> {
+                latencies[session] = runSession(session);
+                return null;
+            });
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        long[] all = new long[sessions * requests];
+        for (int s = 0; s < sessions; s++) {
+            System.arraycopy(latencies[s], 0, all, s * requests, requests);
+        }
+        Arrays.sort(all);
+        System.out.printf(Locale.ROOT, "%d sessions x %d requests in %.2f s: %.0f requests/s%n",
+                          sessions, requests, elapsed / 1e9, all.length / (elapsed / 1e9));
+        System.out.printf(Locale.ROOT, "latency us: p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+                          percentile(all, 50), percentile(all, 90), percentile(all, 99),
+                          percentile(all, 99.9), all.length == 0 ? 0 : all[all.length - 1] / 1e3);
+        return all;
+    }
+
+    //Private auxiliary methods
+    /**
+     * Runs one session
+     * @return The latency of every request
+     */
+    private long[] runSession(int session) throws IOException {
+        long[] latencies = new long[requests];
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            for (int r = 0; r < requests; r++) {
+                String request = requestFor(session, r);
+                long start = System.nanoTime();
+                out.write(request);
+                out.write('\n');
+                out.flush();
+                String answer = in.readLine();
+                latencies[r] = System.nanoTime() - start;
+                if (answer == null) {
+                    throw new IOException("The server closed session " + session);
+                }
+            }
+            out.write("quit\n");
+            out.flush();
+        }
+        return latencies;
+    }
+
+    /**
+     * Returns the request r of a session: cups are pushed and popped and the height is asked
+     */
+    private static String requestFor(int session, int r) {
+        int cup = 1 + (session + r / 3) % 40;
+        switch (r % 3) {
+            case 0: return "pushCup " + cup;
+            case 1: return "height";
+            default: return "popCup";
+        }
+    }
+
+    /**
+     * Returns a percentile of sorted latencies in microseconds
+     */
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e3;
+    }
+}
@@ -0,0 +1,264 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TowerScript - Runs a text file of tower commands on a Tower.
+ *
+ * One command per line, with the names of the Tower methods:
+ *   pushCup i, pushLid i, popCup, popLid, removeCup i, removeLid i,
+ *   undo, redo, makeVisible, makeInvisible
+ * Blank lines and lines starting with # are skipped.
+ *
+ * The file is read line by line, so any size is run in constant memory.
+ * A command that fails (ok() is false after it) or a line that cannot be
+ * understood does not stop the script: the line is counted as failed,
+ * reported to the error log if there is one, and the next line is run.
+ * When the tower is visible the commands are run in batches and the
+ * canvas is updated once per batch; a makeVisible or makeInvisible line
+ * starts or ends the batches right away.
+ *
+ * A headless script never touches the Canvas: makeVisible and
+ * makeInvisible fail with "not available", for example in the sessions
+ * of TowerServer, which run on many threads at once.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class TowerScript {
+    private Tower tower;
+    private int batchSize;
+    private Appendable errorLog;
+    private long lines;
+    private long commands;
+    private long failures;
+    private boolean lastOperationOk;
+    private boolean headless;
+
+    /**
+     * Constructor
+     * @param tower The tower the commands are run on
+     * @param batchSize The number of commands run between canvas updates
+     */
+    public TowerScript(Tower tower, int batchSize) {
+        this.tower = tower;
+        this.batchSize = Math.max(1, batchSize);
+        this.errorLog = null;
+        this.lastOperationOk = true;
+        this.headless = false;
+    }
+
+    /**
+     * Makes the script refuse the commands that draw the tower
+     * @param headless true to answer makeVisible and makeInvisible with a failure
+     */
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+    }
+
+    /**
+     * Checks if the script refuses the commands that draw the tower
+     */
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Sets where the failed lines are reported, one per line, or null to not report them
+     */
+    public void setErrorLog(Appendable errorLog) {
+        this.errorLog = errorLog;
+    }
+
+    /**
+     * Runs every command of a reader
+     * @param in The commands
+     * @throws IOException if the commands cannot be read or the error log written
+     */
+    public void run(Reader in) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        String line = reader.readLine();
+        boolean batched = false;
+        int run = 0;
+        try {
+            while (line != null) {
+                //Checked before every line, a command may have shown or hidden the tower
+                if (batched && (run >= batchSize || !tower.isVisible())) {
+                    Canvas.getCanvas().commit();
+                    batched = false;
+                }
+                if (!batched && tower.isVisible()) {
+                    Canvas.getCanvas().beginBatch();
+                    batched = true;
+                    run = 0;
+                }
+                if (runLine(line)) {
+                    run++;
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            if (batched) {
+                Canvas.getCanvas().commit();
+            }
+        }
+    }
+
+    /**
+     * Runs every command of a channel, read as UTF-8
+     * @param in The commands
+     * @throws IOException if the commands cannot be read or the error log written
+     */
+    public void run(ReadableByteChannel in) throws IOException {
+        run(Channels.newReader(in, StandardCharsets.UTF_8.newDecoder(), 1 << 16));
+    }
+
+    /**
+     * Runs one command, for callers that get the commands one at a time
+     * @param line The command
+     * @return true if the command was done, or the line was blank or a comment
+     * @throws IOException if the error log cannot be written
+     */
+    public boolean runCommand(String line) throws IOException {
+        if (!runLine(line)) {
+            lastOperationOk = true;
+        }
+        return lastOperationOk;
+    }
+
+    /**
+     * Returns the number of lines read
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * Returns the number of commands run, failed or not
+     */
+    public long getCommands() {
+        return commands;
+    }
+
+    /**
+     * Returns the number of lines that failed
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Checks if the last command was done
+     */
+    public boolean ok() {
+        return lastOperationOk;
+    }
+
+    //Private auxiliary methods
+    /**
+     * Runs one line
+     * @return false if the line was blank or a comment
+     */
+    private boolean runLine(String line) throws IOException {
+        lines++;
+        int start = skipSpaces(line, 0);
+        if (start == line.length() || line.charAt(start) == '#') {
+            return false;
+        }
+        int end = start;
+        while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+            end++;
+        }
+        String command = line.substring(start, end);
+        commands++;
+        int argumentStart = skipSpaces(line, end);
+        int argument = 0;
+        boolean hasArgument = argumentStart < line.length();
+        if (hasArgument) {
+            try {
+                argument = Integer.parseInt(line.substring(argumentStart).trim());
+            } catch (NumberFormatException e) {
+                return fail(line, "bad number");
+            }
+        }
+        if (!isCommand(command)) {
+            return fail(line, "unknown command");
+        }
+        if (hasArgument != needsArgument(command)) {
+            return fail(line, hasArgument ? "unexpected number" : "missing number");
+        }
+        if (command.equals("makeVisible") || command.equals("makeInvisible")) {
+            if (headless) {
+                return fail(line, "not available");
+            }
+            //They leave ok() of the tower as it was, so they are always done
+            if (command.equals("makeVisible")) {
+                tower.makeVisible();
+            } else {
+                tower.makeInvisible();
+            }
+            lastOperationOk = true;
+            return true;
+        }
+        switch (command) {
+            case "pushCup": tower.pushCup(argument); break;
+            case "pushLid": tower.pushLid(argument); break;
+            case "popCup": tower.popCup(); break;
+            case "popLid": tower.popLid(); break;
+            case "removeCup": tower.removeCup(argument); break;
+            case "removeLid": tower.removeLid(argument); break;
+            case "undo": tower.undo(); break;
+            case "redo": tower.redo(); break;
+            default: break;
+        }
+        lastOperationOk = tower.ok();
+        if (!lastOperationOk) {
+            return fail(line, "not done");
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a word is one of the commands
+     */
+    private static boolean isCommand(String command) {
+        return needsArgument(command) || command.equals("popCup") || command.equals("popLid")
+            || command.equals("undo") || command.equals("redo")
+            || command.equals("makeVisible") || command.equals("makeInvisible");
+    }
+
+    /**
+     * Checks if a command takes a number
+     */
+    private static boolean needsArgument(String command) {
+        return command.equals("pushCup") || command.equals("pushLid")
+            || command.equals("removeCup") || command.equals("removeLid");
+    }
+
+    /**
+     * Counts a failed line and reports it
+     * @return true, the line counts as a command
+     */
+    private boolean fail(String line, String reason) throws IOException {
+        lastOperationOk = false;
+        failures++;
+        if (errorLog != null) {
+            errorLog.append("line ").append(Long.toString(lines)).append(": ")
+                    .append(reason).append(": ").append(line.trim()).append('\n');
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the first character that is not a space from start
+     */
+    private static int skipSpaces(String line, int start) {
+        while (start < line.length() && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+}
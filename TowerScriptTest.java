@@ -0,0 +1,116 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TowerScriptTest - Checks what TowerScript reports and how it batches.
+ *
+ * makeVisible and makeInvisible are always done, blank lines and comments
+ * are not failures, the canvas batches start and end as soon as a line
+ * shows or hides the tower, and a headless script refuses to show it.
+ *
+ * Usage: java TowerScriptTest
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class TowerScriptTest {
+    private int checks;
+
+    /**
+     * Runs every check, a failed check stops with an AssertionError
+     */
+    public static void main(String[] args) throws IOException {
+        //The canvas is drawn off screen, no window is opened
+        if (System.getProperty(Canvas.HEADLESS_PROPERTY) == null) {
+            System.setProperty(Canvas.HEADLESS_PROPERTY, "true");
+        }
+        TowerScriptTest test = new TowerScriptTest();
+        test.visibilityCommandsAreDone();
+        test.blankLinesAreDone();
+        test.batchesFollowVisibility();
+        test.headlessScriptsDoNotDraw();
+        System.out.println("TowerScriptTest: " + test.checks + " checks passed");
+    }
+
+    /**
+     * A failed command before makeVisible is not reported again for it
+     */
+    public void visibilityCommandsAreDone() throws IOException {
+        Tower tower = new Tower(10, 100);
+        TowerScript script = new TowerScript(tower, 10);
+        StringBuilder log = new StringBuilder();
+        script.setErrorLog(log);
+        script.run(new StringReader("pushCup 99\nmakeVisible\nmakeInvisible\n"));
+        check(log.toString().equals("line 1: not done: pushCup 99\n"), "error log: " + log);
+        check(script.getFailures() == 1 && script.ok(), "only pushCup 99 failed");
+        check(!script.runCommand("pushCup 99") && script.runCommand("makeVisible")
+              && script.runCommand("makeInvisible"), "runCommand of makeVisible and makeInvisible");
+    }
+
+    /**
+     * runCommand of a blank line or a comment is done whatever came before
+     */
+    public void blankLinesAreDone() throws IOException {
+        TowerScript script = new TowerScript(new Tower(10, 100), 1);
+        check(!script.runCommand("popCup"), "popCup on an empty tower");
+        check(script.runCommand("   ") && script.ok(), "blank line after a failure");
+        check(!script.runCommand("popLid") && script.runCommand("# comment"), "comment after a failure");
+    }
+
+    /**
+     * Records after every line if the canvas is in a batch: the lines after
+     * makeVisible are batched and the lines after makeInvisible are not
+     */
+    public void batchesFollowVisibility() throws IOException {
+        Tower tower = new Tower(10, 100);
+        TowerScript script = new TowerScript(tower, 100);
+        final List<Boolean> batching = new ArrayList<Boolean>();
+        String commands = "pushCup 1\nmakeVisible\npushCup 2\nmakeInvisible\npushCup 3\n";
+        BufferedReader reader = new BufferedReader(new StringReader(commands)) {
+            @Override
+            public String readLine() throws IOException {
+                batching.add(Canvas.getCanvas().isBatching());
+                return super.readLine();
+            }
+        };
+        script.run(reader);
+        //readLine is called once before the first line and once after each line
+        check(batching.size() == 6, "lines read");
+        check(!batching.get(1) && !batching.get(2), "no batch while the tower is invisible");
+        check(batching.get(3), "the line after makeVisible is batched");
+        check(!batching.get(5), "the line after makeInvisible is not batched");
+        check(!Canvas.getCanvas().isBatching() && script.getFailures() == 0, "every batch committed");
+        tower.makeInvisible();
+    }
+
+    /**
+     * A headless script fails makeVisible and makeInvisible and leaves
+     * the tower invisible
+     */
+    public void headlessScriptsDoNotDraw() throws IOException {
+        Tower tower = new Tower(10, 100);
+        TowerScript script = new TowerScript(tower, 10);
+        script.setHeadless(true);
+        StringBuilder log = new StringBuilder();
+        script.setErrorLog(log);
+        script.run(new StringReader("pushCup 1\nmakeVisible\npushCup 2\nmakeInvisible\n"));
+        check(!tower.isVisible() && tower.items() == 2, "the tower stays invisible");
+        check(log.toString().equals("line 2: not available: makeVisible\nline 4: not available: makeInvisible\n"),
+              "error log: " + log);
+        check(!script.runCommand("makeVisible") && !tower.isVisible(), "runCommand of makeVisible");
+    }
+
+    //Private auxiliary methods
+    /**
+     * Counts a check and fails if it does not hold
+     */
+    private void check(boolean condition, String message) {
+        checks++;
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
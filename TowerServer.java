@@ -0,0 +1,277 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TowerServer - Local TCP server where every connection is a tower session.
+ *
+ * The server only listens on the loopback address. Each connection gets
+ * its own invisible Tower and a headless TowerScript, which answers
+ * makeVisible and makeInvisible with fail, so no session ever touches the
+ * Canvas. Each session is served by its own thread: a virtual thread
+ * when the JVM has them (Java 21 or later), otherwise a thread of a
+ * cached pool.
+ *
+ * Protocol, one request per line and one answer per request:
+ *   tower width maxHeight   replaces the tower of the session
+ *   pushCup i, popCup ...   any TowerScript command but makeVisible
+ *                           and makeInvisible         -> ok | fail
+ *   height                  -> ok h
+ *   order                   -> ok followed by the stack order
+ *   quit                    closes the session
+ * Unknown or malformed requests are answered with fail.
+ *
+ * A client cannot make its session grow without bound: a request line is
+ * read up to MAX_REQUEST_LENGTH chars, a longer one is answered with fail
+ * and closes the session; pushCup, pushLid, undo and redo fail once the
+ * tower has MAX_SESSION_ITEMS items; a tower needs a width of at least 1
+ * and a maxHeight that is not negative. The ids themselves cost nothing,
+ * the tower keeps its items in an ItemSet and not indexed by id.
+ *
+ * Usage: java TowerServer [port]
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class TowerServer {
+    public static final int DEFAULT_PORT = 7070;
+    private static final int DEFAULT_WIDTH = 100;
+    private static final long DEFAULT_MAX_HEIGHT = Long.MAX_VALUE;
+    //Entries of undo kept per session, so many sessions stay small
+    private static final int SESSION_JOURNAL_LIMIT = 1024;
+    //Longest request line, the longest valid one is about 45 chars
+    private static final int MAX_REQUEST_LENGTH = 256;
+    //Items a session tower can hold
+    private static final int MAX_SESSION_ITEMS = 65536;
+
+    private ServerSocket serverSocket;
+    private ExecutorService sessions;
+    private Thread acceptor;
+    private AtomicInteger openSessions;
+
+    /**
+     * Constructor, the server starts listening right away
+     * @param port The port, or 0 to use any free port
+     * @throws IOException if the port cannot be used
+     */
+    public TowerServer(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        this.sessions = newThreadPerTaskExecutor();
+        this.openSessions = new AtomicInteger();
+        this.acceptor = new Thread(this::acceptConnections, "TowerServer acceptor");
+        this.acceptor.start();
+    }
+
+    /**
+     * Starts a server and keeps it running
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        TowerServer server = new TowerServer(port);
+        System.out.println("Tower server listening on " + InetAddress.getLoopbackAddress().getHostAddress()
+                           + ":" + server.getPort() + (hasVirtualThreads() ? " (virtual threads)" : ""));
+    }
+
+    /**
+     * Returns the port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of sessions open now
+     */
+    public int getOpenSessions() {
+        return openSessions.get();
+    }
+
+    /**
+     * Stops accepting connections and closes the server
+     */
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdown();
+    }
+
+    /**
+     * Checks if the JVM has virtual threads
+     */
+    public static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns an executor that runs every task in a new virtual thread, or a
+     * cached pool of daemon threads when the JVM has no virtual threads
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    //Private auxiliary methods
+    /**
+     * Accepts connections until the server is closed
+     */
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sessions.execute(() -> serve(socket));
+            } catch (IOException e) {
+                //the server was closed
+            }
+        }
+    }
+
+    /**
+     * Serves one session until the client quits or disconnects
+     */
+    private void serve(Socket socket) {
+        openSessions.incrementAndGet();
+        try (Socket connection = socket) {
+            connection.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(
+                new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8));
+            Tower tower = sessionTower(DEFAULT_WIDTH, DEFAULT_MAX_HEIGHT);
+            TowerScript script = sessionScript(tower);
+            String line;
+            while ((line = readRequest(in)) != null) {
+                if (line.length() > MAX_REQUEST_LENGTH) {
+                    out.write("fail\n");
+                    break;
+                }
+                String request = line.trim();
+                if (request.isEmpty()) {
+                    continue;
+                }
+                if (request.equals("quit")) {
+                    break;
+                }
+                if (request.startsWith("tower ")) {
+                    tower = newTower(request);
+                    if (tower == null) {
+                        tower = sessionTower(DEFAULT_WIDTH, DEFAULT_MAX_HEIGHT);
+                        out.write("fail\n");
+                    } else {
+                        out.write("ok\n");
+                    }
+                    script = sessionScript(tower);
+                } else if (request.equals("height")) {
+                    out.write("ok " + tower.height() + "\n");
+                } else if (request.equals("order")) {
+                    StringBuilder answer = new StringBuilder("ok");
+                    for (int item : tower.getStackOrder()) {
+                        answer.append(' ').append(item);
+                    }
+                    out.write(answer.append('\n').toString());
+                } else if (tower.items() >= MAX_SESSION_ITEMS && mayAddItems(request)) {
+                    out.write("fail\n");
+                } else {
+                    out.write(script.runCommand(request) ? "ok\n" : "fail\n");
+                }
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (SocketException e) {
+            //the client went away
+        } catch (IOException e) {
+            System.err.println("Tower session failed: " + e.getMessage());
+        } finally {
+            openSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reads a request line without its line end, but no more than
+     * MAX_REQUEST_LENGTH + 1 chars of it
+     * @return The line, longer than MAX_REQUEST_LENGTH if it was cut, or
+     *         null at the end of the input
+     */
+    private static String readRequest(BufferedReader in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c = in.read();
+        if (c < 0) {
+            return null;
+        }
+        while (c >= 0 && c != '\n' && line.length() <= MAX_REQUEST_LENGTH) {
+            line.append((char) c);
+            c = in.read();
+        }
+        return line.toString();
+    }
+
+    /**
+     * Checks if a request can add items to the tower
+     */
+    private static boolean mayAddItems(String request) {
+        return request.startsWith("push") || request.startsWith("undo") || request.startsWith("redo");
+    }
+
+    /**
+     * Creates the tower of a "tower width maxHeight" request
+     * @return The tower, or null if the request is malformed or out of range
+     */
+    private static Tower newTower(String request) {
+        String[] words = request.split("\\s+");
+        if (words.length != 3) {
+            return null;
+        }
+        try {
+            int width = Integer.parseInt(words[1]);
+            long maxHeight = Long.parseLong(words[2]);
+            if (width < 1 || maxHeight < 0) {
+                return null;
+            }
+            return sessionTower(width, maxHeight);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the tower of a session, with a small journal
+     */
+    private static Tower sessionTower(int width, long maxHeight) {
+        Tower tower = new Tower(width, maxHeight);
+        tower.setJournal(new TowerJournal(SESSION_JOURNAL_LIMIT));
+        return tower;
+    }
+
+    /**
+     * Creates the script of a session, it cannot show the tower
+     */
+    private static TowerScript sessionScript(Tower tower) {
+        TowerScript script = new TowerScript(tower, 1);
+        script.setHeadless(true);
+        return script;
+    }
+}
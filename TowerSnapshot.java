@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TowerSnapshot - Saves and loads the state of a Tower in a binary file.
+ *
+ * Format (version 2, big endian):
+ *   int magic "TWRS", int version,
+ *   int width, long maxHeight, int size, int liddedCups,
+ *   int[size] stackOrder, long[size] bottoms, long[size] tops,
+ *   int[size] supports, long[size] maxTops.
+ * The pairings are not stored: a lid is paired with its cup when it sits
+ * right on it, which the stack order already says. Which cups and lids
+ * are in the tower is not stored either, it is the stack order too, so
+ * the size of the file depends only on the number of items. (Version 1
+ * stored them as bit sets indexed by id, a lid numbered 2^31 - 1 made the
+ * file 256 MB.)
+ *
+ * The file is written and read through a memory mapped FileChannel and
+ * every array is copied in bulk, so nothing is parsed item by item. A
+ * file can be damaged or made by hand, so before the tower is used the
+ * number of items is checked against the size of the file, and the
+ * placement of every item is checked against the nesting rule in one
+ * pass from the bottom (see Tower.readState); a file that does not pass
+ * is reported with an IOException. The loaded tower is invisible; its
+ * Cup and Lid objects are created only when it is made visible.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class TowerSnapshot {
+    private static final int MAGIC = 0x54575253; //"TWRS"
+    private static final int VERSION = 2;
+
+    /**
+     * Saves a tower in a file
+     * @param tower The tower to save
+     * @param fileName The name of the file
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(Tower tower, String fileName) throws IOException {
+        save(tower, Paths.get(fileName));
+    }
+
+    /**
+     * Saves a tower in a file
+     * @param tower The tower to save
+     * @param file The file
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(Tower tower, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8 + tower.stateBytes());
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            tower.writeState(buffer);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Loads a tower saved with save
+     * @param fileName The name of the file
+     * @return The tower, invisible
+     * @throws IOException if the file cannot be read or is not a tower snapshot
+     */
+    public static Tower load(String fileName) throws IOException {
+        return load(Paths.get(fileName));
+    }
+
+    /**
+     * Loads a tower saved with save
+     * @param file The file
+     * @return The tower, invisible
+     * @throws IOException if the file cannot be read or is not a tower snapshot
+     */
+    public static Tower load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a tower snapshot: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported tower snapshot version " + version);
+            }
+            try {
+                return Tower.readState(buffer);
+            } catch (RuntimeException e) {
+                throw new IOException("Damaged tower snapshot: " + file, e);
+            }
+        }
+    }
+
+    //Bulk copies used by Tower
+    /**
+     * Writes the first count ints of an array and moves the buffer position
+     */
+    static void putInts(ByteBuffer buffer, int[] values, int count) {
+        buffer.asIntBuffer().put(values, 0, count);
+        buffer.position(buffer.position() + 4 * count);
+    }
+
+    /**
+     * Writes the first count longs of an array and moves the buffer position
+     */
+    static void putLongs(ByteBuffer buffer, long[] values, int count) {
+        buffer.asLongBuffer().put(values, 0, count);
+        buffer.position(buffer.position() + 8 * count);
+    }
+
+    /**
+     * Reads count ints into a new array of the given length
+     */
+    static int[] getInts(ByteBuffer buffer, int count, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    /**
+     * Reads count longs into a new array of the given length
+     */
+    static long[] getLongs(ByteBuffer buffer, int count, int length) {
+        long[] values = new long[length];
+        buffer.asLongBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + 8 * count);
+        return values;
+    }
+}
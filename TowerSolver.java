@@ -0,0 +1,170 @@
+import java.math.BigInteger;
+
+/**
+ * TowerSolver - Finds an order of cups 1..n, and lids, that builds a tower of
+ * exactly height h. Cup i is 2^(i-1) cm high, like in Cup, and a lid is 1 cm.
+ *
+ * Idea: a cup wider than everything below it rests on the top of the tower,
+ * and a cup narrower than the cup below it falls inside. So the cups whose
+ * bit is set in h are stacked in ascending order (each one on the rim of the
+ * previous one, adding its height), and every other cup is hidden inside the
+ * smallest stacked cup that is wider than it. That works exactly when the
+ * highest bit of h is the one of cup n, that is 2^(n-1) <= h < 2^n.
+ *
+ * Lids reach the heights above that: with every cup stacked (2^n - 1 cm),
+ * lid i put on cup i adds 1 cm, because cup i+1 rests on the lid. So
+ * 2^n <= h <= 2^n - 1 + n is built with lids on the cups 1..h-(2^n - 1).
+ * Lids cannot make a tower lower, nor add more than 1 cm each, so every
+ * height between 2^(n-1) and 2^n - 1 + n has a solution and no other.
+ *
+ * The solver only works with ints, it does not create Cup or Rectangle objects.
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class TowerSolver {
+
+    /**
+     * Finds an order of the cups 1..n with total height h
+     * @param n The number of cups
+     * @param h The height of the tower in cm
+     * @return +id for a cup and -id for a lid from bottom to top, ready for Tower.load,
+     * or null if there is no solution
+     */
+    public static int[] solve(int n, long h) {
+        return expand(stackedCups(n, h));
+    }
+
+    /**
+     * Finds an order of the cups 1..n with total height h, for any n
+     * @param n The number of cups
+     * @param h The height of the tower in cm
+     * @return +id for a cup and -id for a lid from bottom to top, or null if there is no solution
+     */
+    public static int[] solve(int n, BigInteger h) {
+        return expand(stackedCups(n, h));
+    }
+
+    /**
+     * Compact form of a solution: only the stacked cups, in ascending order,
+     * each one followed by its lid (-id) when it has one. The last cup is n
+     * and expand rebuilds the whole order from them.
+     * @param n The number of cups
+     * @param h The height of the tower in cm
+     * @return The stacked cups and lids, or null if there is no solution
+     */
+    public static int[] stackedCups(int n, long h) {
+        if (!isSolvable(n, h)) {
+            return null;
+        }
+        if (n < Cup.MAX_LONG_ID && h >= 1L << n) {
+            return allStacked(n, (int) (h - ((1L << n) - 1)));
+        }
+        int[] stacked = new int[Long.bitCount(h)];
+        int next = 0;
+        for (int c = 1; c <= n; c++) {
+            if ((h & (1L << (c - 1))) != 0) {
+                stacked[next++] = c;
+            }
+        }
+        return stacked;
+    }
+
+    /**
+     * Compact form of a solution for any n, see stackedCups(int, long)
+     * @param n The number of cups
+     * @param h The height of the tower in cm
+     * @return The stacked cups and lids, or null if there is no solution
+     */
+    public static int[] stackedCups(int n, BigInteger h) {
+        if (!isSolvable(n, h)) {
+            return null;
+        }
+        if (h.bitLength() > n) {
+            return allStacked(n, h.subtract(BigInteger.ONE.shiftLeft(n)).intValue() + 1);
+        }
+        int[] stacked = new int[h.bitCount()];
+        int next = 0;
+        for (int c = 1; c <= n; c++) {
+            if (h.testBit(c - 1)) {
+                stacked[next++] = c;
+            }
+        }
+        return stacked;
+    }
+
+    /**
+     * Rebuilds the whole order from the stacked cups: each stacked cup is
+     * followed by the cups it hides, biggest first, and then by its lid
+     * @param stacked The stacked cups in ascending order and their lids, or null
+     * @return +id for a cup and -id for a lid from bottom to top, or null if stacked is null
+     */
+    public static int[] expand(int[] stacked) {
+        if (stacked == null) {
+            return null;
+        }
+        int n = 0;
+        int lids = 0;
+        for (int item : stacked) {
+            if (item > 0) {
+                n = item;
+            } else {
+                lids++;
+            }
+        }
+        int[] order = new int[n + lids];
+        int next = 0;
+        int previous = 0; //last stacked cup
+        for (int item : stacked) {
+            order[next++] = item;
+            if (item > 0) {
+                for (int hidden = item - 1; hidden > previous; hidden--) {
+                    order[next++] = hidden;
+                }
+                previous = item;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Checks if there is an order of the cups 1..n, with lids, of total height h
+     * @return true if the tower can be built
+     */
+    public static boolean isSolvable(int n, long h) {
+        if (n < 1 || n > Cup.MAX_LONG_ID || h <= 0) {
+            return false;
+        }
+        int bits = 64 - Long.numberOfLeadingZeros(h);
+        return bits == n || (n < Cup.MAX_LONG_ID && bits == n + 1 && h - ((1L << n) - 1) <= n);
+    }
+
+    /**
+     * Checks if there is an order of the cups 1..n, with lids, of total height h, for any n
+     * @return true if the tower can be built
+     */
+    public static boolean isSolvable(int n, BigInteger h) {
+        if (n < 1 || h.signum() <= 0) {
+            return false;
+        }
+        return h.bitLength() == n || (h.bitLength() == n + 1
+            && h.subtract(BigInteger.ONE.shiftLeft(n)).compareTo(BigInteger.valueOf(n - 1)) <= 0);
+    }
+
+    //Private auxiliary methods
+    /**
+     * Every cup 1..n stacked, with a lid on each of the first cups
+     * @param lids The number of lids, from 1 to n
+     */
+    private static int[] allStacked(int n, int lids) {
+        int[] stacked = new int[n + lids];
+        int next = 0;
+        for (int c = 1; c <= n; c++) {
+            stacked[next++] = c;
+            if (c <= lids) {
+                stacked[next++] = -c;
+            }
+        }
+        return stacked;
+    }
+}
@@ -0,0 +1,179 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * TowerSolverTest - Checks the solutions of TowerSolver on real towers.
+ *
+ * Every solution is loaded into a Tower and its height() must be the
+ * height asked for. For small n every order of the cups (with any lids)
+ * is tried on a Tower to find which heights can be built at all, and the
+ * solver must solve exactly those.
+ *
+ * Usage: java TowerSolverTest
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class TowerSolverTest {
+    private int checks;
+    private SolverCache cache = new SolverCache(64, 1 << 20);
+
+    /**
+     * Runs every check, a failed check stops with an AssertionError
+     */
+    public static void main(String[] args) {
+        TowerSolverTest test = new TowerSolverTest();
+        for (int n = 1; n <= 4; n++) {
+            test.solvesEveryReachableHeight(n);
+        }
+        for (int n = 1; n <= 12; n++) {
+            test.solutionsBuildTheirHeight(n);
+        }
+        test.largestLongTowers();
+        test.largeBigIntegerTower(100000, 7);
+        System.out.println("TowerSolverTest: " + test.checks + " checks passed");
+    }
+
+    /**
+     * Builds every tower of the cups 1..n and any of the lids 1..n, and
+     * compares the heights found with isSolvable
+     */
+    public void solvesEveryReachableHeight(int n) {
+        BitSet reachable = new BitSet();
+        Tower tower = new Tower(n, Long.MAX_VALUE);
+        search(tower, n, 0, 0, reachable);
+        for (int h = 1; h <= (1 << n) + n + 2; h++) {
+            check(TowerSolver.isSolvable(n, h) == reachable.get(h), "n=" + n + " h=" + h + " reachable is "
+                  + reachable.get(h));
+        }
+    }
+
+    /**
+     * Loads every solution for n into a Tower and checks its height
+     */
+    public void solutionsBuildTheirHeight(int n) {
+        for (long h = 1; h <= (1L << n) + n + 1; h++) {
+            int[] order = TowerSolver.solve(n, h);
+            check((order != null) == TowerSolver.isSolvable(n, h), "n=" + n + " h=" + h + " solved");
+            check(Arrays.equals(order, TowerSolver.solve(n, BigInteger.valueOf(h))), "n=" + n + " h=" + h
+                  + " long and BigInteger solutions");
+            check(Arrays.equals(order, cache.solve(n, h)) && Arrays.equals(order, cache.solve(n, h)),
+                  "n=" + n + " h=" + h + " cached solution");
+            if (order != null) {
+                checkTower(n, h, order);
+                check(BatchSolver.solveLine(n + " " + h, null).equals(join(order))
+                      && BatchSolver.solveLine(n + " " + h, cache).equals(join(order)), "n=" + n + " h=" + h
+                      + " BatchSolver answer");
+            } else {
+                check(BatchSolver.solveLine(n + " " + h, null).equals("impossible"), "n=" + n + " h=" + h
+                      + " BatchSolver impossible");
+            }
+        }
+    }
+
+    /**
+     * The highest towers that fit in a long
+     */
+    public void largestLongTowers() {
+        long h = (1L << 62) + 61;
+        checkTower(62, h, TowerSolver.solve(62, h));
+        check(TowerSolver.solve(62, h + 1) == null, "n=62 is at most 2^62 - 1 + 62");
+        checkTower(63, Long.MAX_VALUE, TowerSolver.solve(63, Long.MAX_VALUE));
+        checkTower(63, 1L << 62, TowerSolver.solve(63, 1L << 62));
+    }
+
+    /**
+     * A tower too big for Tower: the order must use every cup once and
+     * put the lids on the first cups
+     */
+    public void largeBigIntegerTower(int n, int lids) {
+        BigInteger h = BigInteger.ONE.shiftLeft(n).subtract(BigInteger.ONE).add(BigInteger.valueOf(lids));
+        int[] order = TowerSolver.solve(n, h);
+        check(order != null && order.length == n + lids, "n=" + n + " with " + lids + " lids");
+        BitSet cups = new BitSet();
+        int lidsSeen = 0;
+        for (int k = 0; k < order.length; k++) {
+            if (order[k] > 0) {
+                check(!cups.get(order[k]), "cup " + order[k] + " used twice");
+                cups.set(order[k]);
+            } else {
+                check(k > 0 && order[k - 1] == -order[k], "lid " + -order[k] + " on its cup");
+                lidsSeen++;
+            }
+        }
+        check(cups.cardinality() == n && lidsSeen == lids, "every cup and lid used");
+        check(TowerSolver.solve(n, h.add(BigInteger.valueOf(n - lids + 1))) == null, "above 2^n - 1 + n");
+        //The cache keeps a bit per cup, the key h takes about as much
+        SolverCache compact = new SolverCache(4, 1 << 20);
+        check(Arrays.equals(compact.solve(n, h), order) && Arrays.equals(compact.solve(n, h), order)
+              && compact.getHits() == 1, "n=" + n + " cached");
+        check(compact.getBytes() < n / 2, "n=" + n + " takes " + compact.getBytes() + " bytes in the cache");
+    }
+
+    //Private auxiliary methods
+    /**
+     * Loads an order into a Tower and checks its height and its cups
+     */
+    private void checkTower(int n, long h, int[] order) {
+        Tower tower = new Tower(n, h);
+        tower.load(order);
+        check(tower.ok(), "n=" + n + " h=" + h + " loads");
+        check(tower.height() == h, "n=" + n + " h=" + h + " height is " + tower.height());
+        BitSet cups = new BitSet();
+        for (int item : order) {
+            if (item > 0) {
+                cups.set(item);
+            }
+        }
+        check(cups.cardinality() == n && cups.nextSetBit(0) == 1 && cups.length() == n + 1,
+              "n=" + n + " h=" + h + " uses the cups 1..n");
+    }
+
+    /**
+     * Pushes every remaining cup and lid in turn, undoing each push after
+     * the search below it, and records the height of every tower that has
+     * all the cups
+     */
+    private static void search(Tower tower, int n, int cupsUsed, int lidsUsed, BitSet reachable) {
+        if (cupsUsed == (1 << n) - 1) {
+            reachable.set((int) tower.height());
+        }
+        for (int i = 1; i <= n; i++) {
+            if ((cupsUsed & (1 << (i - 1))) == 0) {
+                tower.pushCup(i);
+                search(tower, n, cupsUsed | (1 << (i - 1)), lidsUsed, reachable);
+                tower.undo();
+            }
+            if ((lidsUsed & (1 << (i - 1))) == 0) {
+                tower.pushLid(i);
+                search(tower, n, cupsUsed, lidsUsed | (1 << (i - 1)), reachable);
+                tower.undo();
+            }
+        }
+    }
+
+    /**
+     * Writes an order like BatchSolver does
+     */
+    private static String join(int[] order) {
+        StringBuilder line = new StringBuilder();
+        for (int item : order) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(item);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Counts a check and fails if it does not hold
+     */
+    private void check(boolean condition, String message) {
+        checks++;
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,588 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * TowerTest - Checks Tower against a simple model of the stack.
+ *
+ * The model keeps the items in a list, like the cups and lids of the old
+ * object-based tower, and places every item again from the bottom with
+ * BigInteger heights after each operation. Random operations (push, pop,
+ * remove, undo and redo) are applied to both; the height, the stack order,
+ * the lidded cups and ok() must match after every one.
+ *
+ * Journals that do not fit a tower must be rejected by replay and leave
+ * the tower as it was, and a bounded journal must stay bounded.
+ *
+ * Usage: java TowerTest [operations] [seed]
+ *
+ * @author (Murillo-Rubiano)
+ * @version (1.0)
+ */
+public class TowerTest {
+    private int checks;
+
+    /**
+     * Runs every check, a failed check stops with an AssertionError
+     */
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        TowerTest test = new TowerTest();
+        test.heightsAreExact();
+        test.exactHeightsPastALong();
+        test.randomOperations(operations, seed, 12, 200);
+        test.randomOperations(operations, seed + 1, 62, Long.MAX_VALUE);
+        test.journalsAreChecked();
+        test.journalsAreBounded();
+        test.defaultJournalKeepsEverything();
+        test.hugeLidNumbers();
+        test.snapshotsAreChecked();
+        test.itemSetMatchesHashSet(operations, seed);
+        System.out.println("TowerTest: " + test.checks + " checks passed");
+    }
+
+    /**
+     * Cups 1..62 in ascending order are 2^62 - 1 high and cup 63 still fits
+     * in a long; nothing wider can be pushed
+     */
+    public void heightsAreExact() {
+        Tower tower = new Tower(70, Long.MAX_VALUE);
+        for (int i = 1; i <= 62; i++) {
+            tower.pushCup(i);
+            check(tower.ok(), "pushCup " + i);
+        }
+        check(tower.height() == (1L << 62) - 1, "height of cups 1..62");
+        tower.pushCup(63);
+        check(tower.ok() && tower.height() == Long.MAX_VALUE, "height of cups 1..63");
+        tower.pushCup(64);
+        check(!tower.ok() && tower.height() == Long.MAX_VALUE, "cup 64 does not fit in a long");
+        tower.pushLid(63);
+        check(!tower.ok(), "a lid on top of Long.MAX_VALUE overflows");
+        check(Cup.calculateHeight(62) == 1L << 61, "Cup.calculateHeight(62)");
+        check(Tower.exactHeight(tower.getStackOrder()).equals(BigInteger.valueOf(Long.MAX_VALUE)),
+              "exactHeight of cups 1..63");
+    }
+
+    /**
+     * The opt-in BigInteger path places cups past a long: cups 1..200 in
+     * ascending order and the orders of TowerSolver for n = 100
+     */
+    public void exactHeightsPastALong() {
+        int[] ascending = new int[200];
+        for (int i = 0; i < ascending.length; i++) {
+            ascending[i] = i + 1;
+        }
+        BigInteger all = BigInteger.ONE.shiftLeft(200).subtract(BigInteger.ONE);
+        check(Tower.exactHeight(ascending).equals(all), "exactHeight of cups 1..200");
+        check(Cup.calculateExactHeight(200).equals(BigInteger.ONE.shiftLeft(199)), "Cup.calculateExactHeight(200)");
+        check(Cup.calculateExactHeight(62).longValueExact() == Cup.calculateHeight(62), "both heights of cup 62");
+        Random random = new Random(100);
+        BigInteger low = BigInteger.ONE.shiftLeft(99);
+        for (int i = 0; i < 50; i++) {
+            //From 2^99 to 2^100 - 1 + 100, the heights TowerSolver can build
+            BigInteger h = low.add(new BigInteger(99, random)).add(BigInteger.valueOf(random.nextInt(101)));
+            check(Tower.exactHeight(TowerSolver.solve(100, h)).equals(h), "exactHeight of a solution for " + h);
+        }
+        try {
+            Tower.exactHeight(new int[] {70, -3, 70});
+            check(false, "a repeated cup is placed");
+        } catch (IllegalArgumentException e) {
+            check(true, "a repeated cup is rejected");
+        }
+    }
+
+    /**
+     * Applies the same random operations to a Tower and to the model
+     * @param maxId The biggest cup and lid id used
+     * @param maxHeight The maximum height of the tower
+     */
+    public void randomOperations(int operations, long seed, int maxId, long maxHeight) {
+        Random random = new Random(seed);
+        Tower tower = new Tower(maxId + 1, maxHeight);
+        Model model = new Model(maxHeight);
+        for (int step = 0; step < operations; step++) {
+            int id = 1 + random.nextInt(maxId);
+            String operation;
+            boolean ok;
+            switch (random.nextInt(8)) {
+                case 0:
+                case 1:
+                    operation = "pushCup " + id;
+                    tower.pushCup(id);
+                    ok = model.push(id);
+                    break;
+                case 2:
+                    operation = "pushLid " + id;
+                    tower.pushLid(id);
+                    ok = model.push(-id);
+                    break;
+                case 3:
+                    operation = random.nextBoolean() ? "popCup" : "popLid";
+                    if (operation.equals("popCup")) {
+                        tower.popCup();
+                    } else {
+                        tower.popLid();
+                    }
+                    ok = model.pop(operation.equals("popCup"));
+                    break;
+                case 4:
+                    operation = "removeCup " + id;
+                    tower.removeCup(id);
+                    ok = model.remove(id);
+                    break;
+                case 5:
+                    operation = "removeLid " + id;
+                    tower.removeLid(id);
+                    ok = model.remove(-id);
+                    break;
+                case 6:
+                    operation = "undo";
+                    tower.undo();
+                    ok = model.undo();
+                    break;
+                default:
+                    operation = "redo";
+                    tower.redo();
+                    ok = model.redo();
+                    break;
+            }
+            String where = "step " + step + " (" + operation + ")";
+            check(tower.ok() == ok, where + ": ok() is " + tower.ok());
+            check(model.sameOrder(tower.getStackOrder()), where + ": stack order");
+            check(BigInteger.valueOf(tower.height()).equals(model.height()), where + ": height " + tower.height()
+                  + " instead of " + model.height());
+            check(Tower.exactHeight(tower.getStackOrder()).equals(model.height()), where + ": exactHeight");
+            check(tower.liddedCups() == model.liddedCups(), where + ": lidded cups");
+            check(tower.fits(), where + ": the tower passes its maximum height");
+        }
+    }
+
+    /**
+     * Replays good and bad journals: a good one rebuilds the tower, a bad
+     * one is rejected and the tower keeps its items
+     */
+    public void journalsAreChecked() {
+        Tower original = new Tower(10, 1000);
+        for (int i = 1; i <= 8; i++) {
+            original.pushCup(i);
+        }
+        original.pushLid(8);
+        original.removeCup(3);
+        TowerJournal session = readBack(original.getJournal());
+        Tower copy = new Tower(10, 1000);
+        copy.replay(session);
+        check(Arrays.equals(copy.getStackOrder(), original.getStackOrder())
+              && copy.height() == original.height() && copy.liddedCups() == original.liddedCups(), "replayed tower");
+        copy.undo();
+        check(copy.getStackOrder().length == original.getStackOrder().length + 1, "undo after replay");
+
+        Tower small = new Tower(10, 5);
+        small.pushCup(1);
+        checkRejected(small, session, "a journal higher than the tower");
+        checkRejected(small, journal(new int[] {1, 0}, new int[] {2, 2 << 2}), "an insertion past the top");
+        checkRejected(small, journal(new int[] {1, 0}, new int[] {1, 0}), "an item inserted twice");
+        checkRejected(small, journal(new int[] {1, 0}, new int[] {2, 1}), "a removal of another item");
+        int[][] overflow = new int[64][];
+        for (int i = 1; i <= 63; i++) {
+            overflow[i - 1] = new int[] {i, (i - 1) << 2};
+        }
+        overflow[63] = new int[] {-63, 63 << 2};
+        checkRejected(new Tower(100, Long.MAX_VALUE), journal(overflow), "a tower that overflows a long");
+        checkUnreadable(bytes(1, new int[] {64, 0}), "a cup too wide for a long");
+        checkUnreadable(bytes(1, new int[] {0, 0}), "item 0");
+        checkUnreadable(bytes(1, new int[] {1, -1}), "a negative code");
+        checkUnreadable(bytes(Integer.MAX_VALUE), "a count bigger than the entries");
+        checkUnreadable(bytes(-1), "a negative count");
+    }
+
+    /**
+     * A long session keeps at most the limit of entries and can still
+     * undo the operations kept
+     */
+    public void journalsAreBounded() {
+        Tower tower = new Tower(10, Long.MAX_VALUE);
+        tower.setJournal(new TowerJournal(100));
+        for (int step = 0; step < 10000; step++) {
+            tower.pushCup(1 + step % 5);
+            tower.popCup();
+        }
+        TowerJournal journal = tower.getJournal();
+        check(journal.size() <= 100 && journal.isTrimmed(), "journal bounded to 100 entries");
+        tower.pushCup(2);
+        tower.pushCup(1);
+        tower.undo();
+        tower.undo();
+        check(tower.ok() && tower.getStackOrder().length == 0, "undo in a trimmed journal");
+        try {
+            tower.replay(journal);
+            check(false, "a trimmed journal is replayed");
+        } catch (IllegalArgumentException e) {
+            check(true, "a trimmed journal is rejected");
+        }
+        int[] lids = new int[100000];
+        for (int i = 0; i < lids.length; i++) {
+            lids[i] = -(i + 1);
+        }
+        tower.load(lids);
+        tower.undo();
+        check(tower.ok() && tower.getStackOrder().length == 0, "undo of an operation longer than the limit");
+        Tower untracked = new Tower(10, 100);
+        untracked.setJournal(new TowerJournal(0));
+        untracked.pushCup(1);
+        untracked.undo();
+        check(!untracked.ok() && untracked.getJournal().size() == 0, "a journal of limit 0 records nothing");
+    }
+
+    /**
+     * The journal of a new Tower keeps a long session whole, so it can be
+     * written and replayed
+     */
+    public void defaultJournalKeepsEverything() {
+        Tower tower = new Tower(10, Long.MAX_VALUE);
+        for (int step = 0; step < 100000; step++) {
+            tower.pushCup(1 + step % 5);
+            tower.popCup();
+        }
+        tower.pushCup(3);
+        check(!tower.getJournal().isTrimmed() && tower.getJournal().size() == 200001, "every entry kept");
+        Tower copy = new Tower(10, Long.MAX_VALUE);
+        copy.replay(readBack(tower.getJournal()));
+        check(Arrays.equals(copy.getStackOrder(), new int[] {3}), "a long session replayed");
+    }
+
+    /**
+     * Lid numbers are not bounded; a huge one takes no more memory or file
+     * space than a small one
+     */
+    public void hugeLidNumbers() {
+        Tower tower = new Tower(10, 100);
+        tower.pushLid(Integer.MAX_VALUE);
+        check(tower.ok() && tower.height() == 1, "pushLid(Integer.MAX_VALUE)");
+        tower.pushLid(Integer.MAX_VALUE);
+        check(!tower.ok(), "the same lid twice");
+        check(!tower.fitsLid(Integer.MAX_VALUE) && tower.fitsLid(Integer.MAX_VALUE - 1), "fitsLid");
+        try {
+            Path file = Files.createTempFile("tower", ".snapshot");
+            TowerSnapshot.save(tower, file);
+            long bytes = Files.size(file);
+            Tower loaded = TowerSnapshot.load(file);
+            Files.delete(file);
+            check(bytes < 100, "snapshot of one lid is " + bytes + " bytes");
+            check(Arrays.equals(loaded.getStackOrder(), new int[] {-Integer.MAX_VALUE}), "snapshot loaded");
+            loaded.pushLid(Integer.MAX_VALUE);
+            check(!loaded.ok(), "the loaded tower knows its lids");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        tower.removeLid(Integer.MAX_VALUE);
+        check(tower.ok() && tower.items() == 0, "removeLid(Integer.MAX_VALUE)");
+    }
+
+    /**
+     * A damaged snapshot is an IOException: a count bigger than the file is
+     * rejected before anything is allocated for it, and every item must be
+     * new and where the nesting rule would put it
+     */
+    public void snapshotsAreChecked() {
+        Tower tower = new Tower(10, 100);
+        tower.pushCup(3);
+        tower.pushLid(3);
+        tower.pushCup(1);
+        try {
+            Path file = Files.createTempFile("tower", ".snapshot");
+            TowerSnapshot.save(tower, file);
+            byte[] good = Files.readAllBytes(file);
+            Tower loaded = TowerSnapshot.load(file);
+            check(Arrays.equals(loaded.getStackOrder(), tower.getStackOrder()) && loaded.height() == tower.height()
+                  && loaded.liddedCups() == 1, "a good snapshot loads");
+            //size at byte 20, liddedCups at 24, stackOrder at 28, supports at 28 + 3 * (4 + 8 + 8)
+            checkDamaged(file, good, 20, Integer.MAX_VALUE - 8, "a count bigger than the file");
+            checkDamaged(file, good, 20, -1, "a negative count");
+            checkDamaged(file, good, 24, 2, "a wrong number of lidded cups");
+            checkDamaged(file, good, 36, 3, "a repeated cup");
+            checkDamaged(file, good, 36, 64, "a cup too wide for a long");
+            checkDamaged(file, good, 28 + 3 * 20 + 4, 0, "a wrong support");
+            Files.write(file, Arrays.copyOf(good, good.length - 1));
+            checkDamaged(file, "a cut file");
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Applies random adds and removes to an ItemSet and a HashSet
+     */
+    public void itemSetMatchesHashSet(int operations, long seed) {
+        Random random = new Random(seed);
+        ItemSet items = new ItemSet();
+        Set<Integer> expected = new HashSet<Integer>();
+        for (int step = 0; step < operations * 5; step++) {
+            //Few distinct items so that they collide and are removed often
+            int item = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) == 0) {
+                item = random.nextBoolean() ? Integer.MAX_VALUE - item : -Integer.MAX_VALUE + item;
+            }
+            if (item == 0) {
+                continue;
+            }
+            if (random.nextBoolean()) {
+                check(items.add(item) == expected.add(item), "step " + step + ": add " + item);
+            } else {
+                check(items.remove(item) == expected.remove(item), "step " + step + ": remove " + item);
+            }
+            check(items.size() == expected.size(), "step " + step + ": size");
+            int probe = random.nextInt(2000) - 1000;
+            check(items.contains(probe) == expected.contains(probe), "step " + step + ": contains " + probe);
+        }
+    }
+
+    //Private auxiliary methods
+    /**
+     * Checks that replay rejects a journal and leaves the tower as it was
+     */
+    private void checkRejected(Tower tower, TowerJournal session, String what) {
+        int[] before = tower.getStackOrder();
+        long height = tower.height();
+        try {
+            tower.replay(session);
+            check(false, what + " is replayed");
+        } catch (IllegalArgumentException e) {
+            check(Arrays.equals(tower.getStackOrder(), before) && tower.height() == height,
+                  what + " changes the tower");
+        }
+    }
+
+    /**
+     * Checks that TowerJournal.read rejects some bytes
+     */
+    private void checkUnreadable(byte[] bytes, String what) {
+        try {
+            TowerJournal.read(new ByteArrayInputStream(bytes));
+            check(false, what + " is read");
+        } catch (IOException e) {
+            check(true, what + " is rejected");
+        }
+    }
+
+    /**
+     * Writes a snapshot with one int changed and checks that it is rejected
+     */
+    private void checkDamaged(Path file, byte[] good, int offset, int value, String what) throws IOException {
+        byte[] bytes = good.clone();
+        ByteBuffer.wrap(bytes).putInt(offset, value);
+        Files.write(file, bytes);
+        checkDamaged(file, what);
+    }
+
+    /**
+     * Checks that a snapshot is rejected with an IOException
+     */
+    private void checkDamaged(Path file, String what) {
+        try {
+            TowerSnapshot.load(file);
+            check(false, what + " is loaded");
+        } catch (IOException e) {
+            check(true, what + " is rejected");
+        }
+    }
+
+    /**
+     * Writes a journal and reads it back
+     */
+    private static TowerJournal readBack(TowerJournal journal) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            journal.write(bytes);
+            return TowerJournal.read(new ByteArrayInputStream(bytes.toByteArray()));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Builds a journal from pairs {item, code}
+     */
+    private static TowerJournal journal(int[]... entries) {
+        try {
+            return TowerJournal.read(new ByteArrayInputStream(bytes(entries.length, entries)));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Writes the bytes of a journal with a count and some pairs {item, code}
+     */
+    private static byte[] bytes(int count, int[]... entries) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(0x544A524E);
+            data.writeInt(1);
+            data.writeInt(count);
+            for (int[] entry : entries) {
+                data.writeInt(entry[0]);
+                data.writeInt(entry[1]);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Counts a check and fails if it does not hold
+     */
+    private void check(boolean condition, String message) {
+        checks++;
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * The model: a list of items placed from scratch, and the whole list
+     * saved before every change for undo and redo
+     */
+    private static class Model {
+        private BigInteger maxHeight;
+        private List<Integer> items;
+        private Deque<List<Integer>> undone;
+        private Deque<List<Integer>> done;
+
+        public Model(long maxHeight) {
+            this.maxHeight = BigInteger.valueOf(maxHeight);
+            this.items = new ArrayList<Integer>();
+            this.undone = new ArrayDeque<List<Integer>>();
+            this.done = new ArrayDeque<List<Integer>>();
+        }
+
+        public boolean push(int item) {
+            if (items.contains(item)) {
+                return false;
+            }
+            List<Integer> pushed = new ArrayList<Integer>(items);
+            pushed.add(item);
+            if (heightOf(pushed).compareTo(maxHeight) > 0) {
+                return false;
+            }
+            change(pushed);
+            return true;
+        }
+
+        public boolean pop(boolean cup) {
+            for (int k = items.size() - 1; k >= 0; k--) {
+                if ((items.get(k) > 0) == cup) {
+                    List<Integer> popped = new ArrayList<Integer>(items);
+                    popped.remove(k);
+                    change(popped);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean remove(int item) {
+            if (!items.contains(item)) {
+                return false;
+            }
+            List<Integer> removed = new ArrayList<Integer>(items);
+            removed.remove(Integer.valueOf(item));
+            change(removed);
+            return true;
+        }
+
+        public boolean undo() {
+            if (done.isEmpty()) {
+                return false;
+            }
+            undone.push(items);
+            items = done.pop();
+            return true;
+        }
+
+        public boolean redo() {
+            if (undone.isEmpty()) {
+                return false;
+            }
+            done.push(items);
+            items = undone.pop();
+            return true;
+        }
+
+        public BigInteger height() {
+            return heightOf(items);
+        }
+
+        public int liddedCups() {
+            int count = 0;
+            for (int k = 1; k < items.size(); k++) {
+                if (items.get(k) < 0 && items.get(k - 1) == -items.get(k)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public boolean sameOrder(int[] order) {
+            if (order.length != items.size()) {
+                return false;
+            }
+            for (int k = 0; k < order.length; k++) {
+                if (order[k] != items.get(k)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void change(List<Integer> changed) {
+            done.push(items);
+            undone.clear();
+            items = changed;
+        }
+
+        /**
+         * Places every item from the bottom: an item rests on the tops of
+         * the items below it down to the first wider one, and on the base of
+         * that one if it is a cup or on its top if it is a lid
+         */
+        private static BigInteger heightOf(List<Integer> stack) {
+            BigInteger[] bottoms = new BigInteger[stack.size()];
+            BigInteger[] tops = new BigInteger[stack.size()];
+            BigInteger height = BigInteger.ZERO;
+            for (int k = 0; k < stack.size(); k++) {
+                int item = stack.get(k);
+                int width = Math.abs(item);
+                BigInteger bottom = BigInteger.ZERO;
+                for (int j = k - 1; j >= 0; j--) {
+                    int below = stack.get(j);
+                    if (Math.abs(below) > width) {
+                        bottom = bottom.max(below > 0 ? bottoms[j].add(BigInteger.ONE) : tops[j]);
+                        break;
+                    }
+                    bottom = bottom.max(tops[j]);
+                }
+                bottoms[k] = bottom;
+                tops[k] = bottom.add(item > 0 ? BigInteger.ONE.shiftLeft(item - 1) : BigInteger.ONE);
+                height = height.max(tops[k]);
+            }
+            return height;
+        }
+    }
+}
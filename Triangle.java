@@ -7,7 +7,7 @@ import java.awt.*;
  * @version 1.0  (15 July 2000)
  */
 
-public class Triangle{
+public class Triangle implements Animator.Movable{
     
     public static int VERTICES=3;
     
@@ -79,7 +79,6 @@ public class Triangle{
      * @param distance the desired distance in pixels
      */
     public void moveHorizontal(int distance){
-        erase();
         xPosition += distance;
         draw();
     }
@@ -89,49 +88,34 @@ public class Triangle{
      * @param distance the desired distance in pixels
      */
     public void moveVertical(int distance){
-        erase();
         yPosition += distance;
         draw();
     }
 
+    /**
+     * Tell if the triangle is drawn on the canvas.
+     * @return true if the triangle is visible
+     */
+    public boolean isVisible(){
+        return isVisible;
+    }
+
     /**
      * Slowly move the triangle horizontally.
+     * The move is animated over time by the Animator.
      * @param distance the desired distance in pixels
      */
     public void slowMoveHorizontal(int distance){
-        int delta;
-
-        if(distance < 0) {
-            delta = -1;
-            distance = -distance;
-        } else {
-            delta = 1;
-        }
-
-        for(int i = 0; i < distance; i++){
-            xPosition += delta;
-            draw();
-        }
+        Animator.slowMove(this, xPosition, yPosition, xPosition + distance, yPosition);
     }
 
     /**
      * Slowly move the triangle vertically.
+     * The move is animated over time by the Animator.
      * @param distance the desired distance in pixels
      */
     public void slowMoveVertical(int distance){
-        int delta;
-
-        if(distance < 0) {
-            delta = -1;
-            distance = -distance;
-        } else {
-            delta = 1;
-        }
-
-        for(int i = 0; i < distance; i++){
-            yPosition += delta;
-            draw();
-        }
+        Animator.slowMove(this, xPosition, yPosition, xPosition, yPosition + distance);
     }
 
     /**
@@ -140,12 +124,37 @@ public class Triangle{
      * @param newWidht the new width in pixels. newWidht must be >=0.
      */
     public void changeSize(int newHeight, int newWidth) {
-        erase();
         height = newHeight;
         width = newWidth;
         draw();
     }
     
+    /**
+     * Move the triangle to a position and change its size at once.
+     * Unlike the move methods, the position is absolute and the canvas is
+     * updated only once.
+     * @param x the new x coordinate (top vertex)
+     * @param y the new y coordinate (top vertex)
+     * @param newWidth the new width in pixels. newWidth must be >=0.
+     * @param newHeight the new height in pixels. newHeight must be >=0.
+     */
+    public void setBounds(int x, int y, int newWidth, int newHeight){
+        xPosition = x;
+        yPosition = y;
+        width = newWidth;
+        height = newHeight;
+        draw();
+    }
+
+    /**
+     * Move the triangle to an absolute position with a single canvas update.
+     * @param x the new x coordinate (top vertex)
+     * @param y the new y coordinate (top vertex)
+     */
+    public void setPosition(int x, int y){
+        setBounds(x, y, width, height);
+    }
+
     /**
      * Change the color. 
      * @param color the new color. Valid colors are "red", "yellow", "blue", "green",
@@ -165,7 +174,6 @@ public class Triangle{
             int[] xpoints = { xPosition, xPosition + (width/2), xPosition - (width/2) };
             int[] ypoints = { yPosition, yPosition + height, yPosition + height };
             canvas.draw(this, color, new Polygon(xpoints, ypoints, 3));
-            canvas.wait(10);
         }
     }
 